@@ -0,0 +1,97 @@
+package com.kosten.ai.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to the replica and everything else to the primary. Reads stay on
+ * the primary for a user who has just committed a write, and for everyone while the replica is
+ * unreachable. Must be wrapped in a LazyConnectionDataSourceProxy so that the connection is
+ * fetched after the transaction's read-only flag has been set.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Route { PRIMARY, REPLICA }
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReadYourWritesTracker readYourWritesTracker;
+    private final long replicaRetryMillis;
+    private volatile long replicaDownUntil;
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica,
+                                      ReadYourWritesTracker readYourWritesTracker, long replicaRetryMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.readYourWritesTracker = readYourWritesTracker;
+        this.replicaRetryMillis = replicaRetryMillis;
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || System.currentTimeMillis() < replicaDownUntil) {
+            return Route.PRIMARY;
+        }
+        String username = currentUsername();
+        if (username != null && readYourWritesTracker.wroteRecently(username)) {
+            return Route.PRIMARY;
+        }
+        return Route.REPLICA;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (determineCurrentLookupKey() == Route.REPLICA) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                replicaDownUntil = System.currentTimeMillis() + replicaRetryMillis;
+                log.warn("Read replica unavailable, routing reads to the primary for {} ms: {}",
+                        replicaRetryMillis, e.getMessage());
+                return primary.getConnection();
+            }
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            trackWrite();
+        }
+        return primary.getConnection();
+    }
+
+    private void trackWrite() {
+        String username = currentUsername();
+        if (username == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // The replica can only lag behind data that was actually committed
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    readYourWritesTracker.recordWrite(username);
+                }
+            });
+        } else {
+            readYourWritesTracker.recordWrite(username);
+        }
+    }
+
+    private String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && !(authentication instanceof AnonymousAuthenticationToken)
+                ? authentication.getName() : null;
+    }
+}
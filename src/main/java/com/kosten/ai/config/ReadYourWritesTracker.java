@@ -0,0 +1,41 @@
+package com.kosten.ai.config;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers when a user last committed a write, so that their reads are kept on the primary
+ * until the replica has had time to catch up.
+ *
+ * <p>The write times are kept in memory per instance. With several instances behind a load
+ * balancer without sticky sessions, a read that lands on another instance than the write can
+ * still go to a lagging replica. Writes of background threads without a logged-in user, such as
+ * the invoices saved by the extraction worker, are not recorded at all; clients polling an
+ * extraction job may see the job as succeeded before its invoice is on the replica.
+ */
+public class ReadYourWritesTracker {
+
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final long windowMillis;
+
+    public ReadYourWritesTracker(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public void recordWrite(String username) {
+        lastWrites.put(username, System.currentTimeMillis());
+    }
+
+    public boolean wroteRecently(String username) {
+        Long lastWrite = lastWrites.get(username);
+        return lastWrite != null && System.currentTimeMillis() - lastWrite < windowMillis;
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.routing.read-your-writes-ms:5000}")
+    public void evictExpired() {
+        long cutoff = System.currentTimeMillis() - windowMillis;
+        lastWrites.values().removeIf(lastWrite -> lastWrite < cutoff);
+    }
+}
@@ -0,0 +1,30 @@
+package com.kosten.ai.controller;
+
+import com.kosten.ai.dto.SpendAnalyticsResponse;
+import com.kosten.ai.service.SpendAnalyticsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/api/analytics")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class AnalyticsController {
+
+    private final SpendAnalyticsService spendAnalyticsService;
+
+    @GetMapping("/spend")
+    public ResponseEntity<SpendAnalyticsResponse> getSpend(
+            @RequestParam(defaultValue = "month") String groupBy,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) Integer top) {
+        SpendAnalyticsResponse response = spendAnalyticsService.getSpend(
+                SpendAnalyticsService.GroupBy.from(groupBy), startDate, endDate, top);
+        return ResponseEntity.ok(response);
+    }
+}
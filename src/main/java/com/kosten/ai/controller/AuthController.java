@@ -2,11 +2,15 @@ package com.kosten.ai.controller;
 
 import com.kosten.ai.dto.AuthResponse;
 import com.kosten.ai.dto.LoginRequest;
+import com.kosten.ai.dto.RefreshTokenRequest;
 import com.kosten.ai.dto.RegisterRequest;
+import com.kosten.ai.security.AuthenticatedUser;
 import com.kosten.ai.service.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -24,8 +28,22 @@ public class AuthController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<AuthResponse> login(@Valid @RequestBody LoginRequest request) {
-        AuthResponse response = authService.login(request);
+    public ResponseEntity<AuthResponse> login(@Valid @RequestBody LoginRequest request,
+                                              HttpServletRequest httpRequest) {
+        AuthResponse response = authService.login(request, httpRequest.getRemoteAddr());
         return ResponseEntity.ok(response);
     }
+
+    @PostMapping("/refresh")
+    public ResponseEntity<AuthResponse> refresh(@Valid @RequestBody RefreshTokenRequest request) {
+        AuthResponse response = authService.refresh(request);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@Valid @RequestBody RefreshTokenRequest request,
+                                       @AuthenticationPrincipal AuthenticatedUser principal) {
+        authService.logout(request, principal);
+        return ResponseEntity.ok().build();
+    }
 }
@@ -1,29 +1,52 @@
 package com.kosten.ai.controller;
 
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.kosten.ai.dto.BulkUpdateInvoicesRequest;
+import com.kosten.ai.dto.BulkUpdateResponse;
+import com.kosten.ai.dto.CreateUploadSessionRequest;
+import com.kosten.ai.dto.CursorPage;
+import com.kosten.ai.dto.ExtractionJobResponse;
+import com.kosten.ai.dto.InvoiceImportResponse;
 import com.kosten.ai.dto.InvoiceResponse;
 import com.kosten.ai.dto.UpdateInvoiceRequest;
+import com.kosten.ai.dto.UploadSessionResponse;
+import com.kosten.ai.dto.VendorSuggestion;
+import com.kosten.ai.repository.InvoiceFile;
+import com.kosten.ai.service.ExtractionJobService;
+import com.kosten.ai.service.IdempotencyService;
+import com.kosten.ai.service.InvoiceBulkUpdateService;
+import com.kosten.ai.service.InvoiceExportService;
+import com.kosten.ai.service.InvoiceImportService;
 import com.kosten.ai.service.InvoiceService;
+import com.kosten.ai.service.UploadAdmissionService;
+import com.kosten.ai.service.UploadSessionService;
+import com.kosten.ai.service.VendorSuggestionService;
 
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 
 @RestController
@@ -33,11 +56,85 @@ import lombok.RequiredArgsConstructor;
 public class InvoiceController {
 
     private final InvoiceService invoiceService;
+    private final VendorSuggestionService vendorSuggestionService;
+    private final InvoiceExportService invoiceExportService;
+    private final InvoiceImportService invoiceImportService;
+    private final InvoiceBulkUpdateService invoiceBulkUpdateService;
+    private final ExtractionJobService extractionJobService;
+    private final UploadAdmissionService uploadAdmissionService;
+    private final IdempotencyService idempotencyService;
+    private final UploadSessionService uploadSessionService;
 
     @PostMapping("/upload/{projectId}")
     public ResponseEntity<InvoiceResponse> uploadInvoice(@RequestParam("file") MultipartFile file,
-                                                          @PathVariable Long projectId) {
-        InvoiceResponse response = invoiceService.processInvoice(file, projectId);
+                                                          @PathVariable Long projectId,
+                                                          @RequestParam(defaultValue = "false") boolean allowDuplicate,
+                                                          @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey,
+                () -> IdempotencyService.fingerprint("upload", projectId, allowDuplicate, file), () -> {
+            try (UploadAdmissionService.Permit permit = uploadAdmissionService.admit()) {
+                return invoiceService.processInvoice(file, projectId, allowDuplicate, permit);
+            }
+        }).toResponseEntity();
+    }
+
+    @PostMapping("/upload/{projectId}/async")
+    public ResponseEntity<ExtractionJobResponse> uploadInvoiceAsync(@RequestParam("file") MultipartFile file,
+                                                                    @PathVariable Long projectId,
+                                                                    @RequestParam(defaultValue = "false") boolean allowDuplicate,
+                                                                    @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        // A replay returns the job as it was enqueued, its current state is at GET /jobs/{id}
+        return idempotencyService.execute(idempotencyKey,
+                () -> IdempotencyService.fingerprint("uploadAsync", projectId, allowDuplicate, file),
+                () -> extractionJobService.enqueue(file, projectId, allowDuplicate))
+                .toResponseEntity(HttpStatus.ACCEPTED);
+    }
+
+    @PostMapping("/uploads")
+    public ResponseEntity<UploadSessionResponse> createUploadSession(@Valid @RequestBody CreateUploadSessionRequest request) {
+        UploadSessionResponse response = uploadSessionService.create(request);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/uploads/{sessionId}")
+    public ResponseEntity<UploadSessionResponse> getUploadSession(@PathVariable String sessionId) {
+        UploadSessionResponse response = uploadSessionService.getSession(sessionId);
+        return ResponseEntity.ok(response);
+    }
+
+    @PutMapping(value = "/uploads/{sessionId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSessionResponse> uploadChunk(@PathVariable String sessionId,
+                                                             @RequestParam long offset,
+                                                             InputStream body) {
+        UploadSessionResponse response = uploadSessionService.writeChunk(sessionId, offset, body);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/uploads/{sessionId}/complete")
+    public ResponseEntity<InvoiceResponse> completeUploadSession(@PathVariable String sessionId,
+                                                                 @RequestParam(defaultValue = "false") boolean allowDuplicate) {
+        try (UploadAdmissionService.Permit permit = uploadAdmissionService.admit()) {
+            InvoiceResponse response = uploadSessionService.complete(sessionId, allowDuplicate, permit);
+            return ResponseEntity.ok(response);
+        }
+    }
+
+    @DeleteMapping("/uploads/{sessionId}")
+    public ResponseEntity<Void> cancelUploadSession(@PathVariable String sessionId) {
+        uploadSessionService.cancel(sessionId);
+        return ResponseEntity.ok().build();
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ExtractionJobResponse> getExtractionJob(@PathVariable Long jobId) {
+        ExtractionJobResponse response = extractionJobService.getJob(jobId);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/import")
+    public ResponseEntity<InvoiceImportResponse> importInvoices(@RequestParam("file") MultipartFile file,
+                                                                @RequestParam(required = false) Long projectId) {
+        InvoiceImportResponse response = invoiceImportService.importCsv(file, projectId);
         return ResponseEntity.ok(response);
     }
 
@@ -49,6 +146,14 @@ public class InvoiceController {
         return ResponseEntity.ok(invoices);
     }
 
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPage<InvoiceResponse>> getAllInvoicesByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        CursorPage<InvoiceResponse> invoices = invoiceService.getUserInvoicesByCursor(cursor, size);
+        return ResponseEntity.ok(invoices);
+    }
+
     @GetMapping("/search")
     public ResponseEntity<Page<InvoiceResponse>> searchInvoices(
             @RequestParam(required = false) String invoiceNumber,
@@ -62,6 +167,52 @@ public class InvoiceController {
         return ResponseEntity.ok(invoices);
     }
 
+    @GetMapping("/search/cursor")
+    public ResponseEntity<CursorPage<InvoiceResponse>> searchInvoicesByCursor(
+            @RequestParam(required = false) String invoiceNumber,
+            @RequestParam(required = false) String vendor,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        
+        CursorPage<InvoiceResponse> invoices = invoiceService.searchInvoicesByCursor(invoiceNumber, vendor, startDate, endDate, cursor, size);
+        return ResponseEntity.ok(invoices);
+    }
+
+    @GetMapping("/search/text")
+    public ResponseEntity<Page<InvoiceResponse>> searchInvoicesFullText(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        Page<InvoiceResponse> invoices = invoiceService.searchInvoicesFullText(query, page, size);
+        return ResponseEntity.ok(invoices);
+    }
+
+    @GetMapping("/vendors")
+    public ResponseEntity<List<VendorSuggestion>> suggestVendors(
+            @RequestParam(defaultValue = "") String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        List<VendorSuggestion> vendors = vendorSuggestionService.suggest(prefix, limit);
+        return ResponseEntity.ok(vendors);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportInvoices(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) Long projectId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        
+        InvoiceExportService.Format exportFormat = InvoiceExportService.Format.from(format);
+        StreamingResponseBody body = invoiceExportService.export(exportFormat, projectId, startDate, endDate);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"invoices." + exportFormat.getExtension() + "\"")
+                .body(body);
+    }
+
     @GetMapping("/project/{projectId}")
     public ResponseEntity<List<InvoiceResponse>> getProjectInvoices(@PathVariable Long projectId) {
         List<InvoiceResponse> invoices = invoiceService.getProjectInvoices(projectId);
@@ -76,19 +227,26 @@ public class InvoiceController {
 
     @GetMapping("/{id}/download")
     public ResponseEntity<byte[]> downloadInvoiceImage(@PathVariable Long id) {
-        byte[] imageData = invoiceService.getInvoiceImage(id);
-        String contentType = invoiceService.getInvoiceContentType(id);
+        InvoiceFile file = invoiceService.getInvoiceFile(id);
+        String contentType = file.getContentType();
 
         return ResponseEntity.ok()
                 .contentType(MediaType.parseMediaType(contentType != null ? contentType : "image/jpeg"))
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"invoice_" + id + ".jpg\"")
-                .body(imageData);
+                .body(file.getImageData());
     }
 
     @PutMapping("/{id}")
     public ResponseEntity<InvoiceResponse> updateInvoice(@PathVariable Long id, 
-                                                          @RequestBody UpdateInvoiceRequest request) {
-        InvoiceResponse response = invoiceService.updateInvoice(id, request);
+                                                          @RequestBody UpdateInvoiceRequest request,
+                                                          @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, () -> IdempotencyService.fingerprint("updateInvoice", id, request),
+                () -> invoiceService.updateInvoice(id, request)).toResponseEntity();
+    }
+
+    @PatchMapping("/bulk")
+    public ResponseEntity<BulkUpdateResponse> bulkUpdateInvoices(@RequestBody BulkUpdateInvoicesRequest request) {
+        BulkUpdateResponse response = invoiceBulkUpdateService.bulkUpdate(request);
         return ResponseEntity.ok(response);
     }
 
@@ -1,13 +1,19 @@
 package com.kosten.ai.controller;
 
 import com.kosten.ai.dto.CreateProjectRequest;
+import com.kosten.ai.dto.CursorPage;
 import com.kosten.ai.dto.ProjectResponse;
+import com.kosten.ai.service.IdempotencyService;
+import com.kosten.ai.service.ProjectArchiveService;
 import com.kosten.ai.service.ProjectService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -18,11 +24,14 @@ import java.util.List;
 public class ProjectController {
 
     private final ProjectService projectService;
+    private final ProjectArchiveService projectArchiveService;
+    private final IdempotencyService idempotencyService;
 
     @PostMapping
-    public ResponseEntity<ProjectResponse> createProject(@Valid @RequestBody CreateProjectRequest request) {
-        ProjectResponse response = projectService.createProject(request);
-        return ResponseEntity.ok(response);
+    public ResponseEntity<ProjectResponse> createProject(@Valid @RequestBody CreateProjectRequest request,
+                                                         @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, () -> IdempotencyService.fingerprint("createProject", request),
+                () -> projectService.createProject(request)).toResponseEntity();
     }
 
     @GetMapping
@@ -33,17 +42,36 @@ public class ProjectController {
         return ResponseEntity.ok(projects);
     }
 
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPage<ProjectResponse>> getAllProjectsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        CursorPage<ProjectResponse> projects = projectService.getUserProjectsByCursor(cursor, size);
+        return ResponseEntity.ok(projects);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<ProjectResponse> getProjectById(@PathVariable Long id) {
         ProjectResponse project = projectService.getProjectById(id);
         return ResponseEntity.ok(project);
     }
 
+    @GetMapping("/{id}/archive")
+    public ResponseEntity<StreamingResponseBody> downloadProjectArchive(@PathVariable Long id) {
+        StreamingResponseBody body = projectArchiveService.archive(id);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"project_" + id + ".zip\"")
+                .body(body);
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<ProjectResponse> updateProject(@PathVariable Long id, 
-                                                          @Valid @RequestBody CreateProjectRequest request) {
-        ProjectResponse response = projectService.updateProject(id, request);
-        return ResponseEntity.ok(response);
+                                                          @Valid @RequestBody CreateProjectRequest request,
+                                                          @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, () -> IdempotencyService.fingerprint("updateProject", id, request),
+                () -> projectService.updateProject(id, request)).toResponseEntity();
     }
 
     @DeleteMapping("/{id}")
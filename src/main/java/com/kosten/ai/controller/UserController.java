@@ -0,0 +1,36 @@
+package com.kosten.ai.controller;
+
+import com.kosten.ai.dto.AuthResponse;
+import com.kosten.ai.dto.ChangePasswordRequest;
+import com.kosten.ai.service.UserService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/users")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class UserController {
+
+    private final UserService userService;
+
+    @PostMapping("/me/logout")
+    public ResponseEntity<Void> logout() {
+        userService.logout();
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/me/password")
+    public ResponseEntity<AuthResponse> changePassword(@Valid @RequestBody ChangePasswordRequest request) {
+        AuthResponse response = userService.changePassword(request);
+        return ResponseEntity.ok(response);
+    }
+
+    @DeleteMapping("/me")
+    public ResponseEntity<Void> deleteAccount() {
+        userService.deleteCurrentUser();
+        return ResponseEntity.ok().build();
+    }
+}
@@ -11,4 +11,8 @@ public class AuthResponse {
     private String token;
     private String username;
     private String email;
+    // Single use: every refresh returns a new one
+    private String refreshToken;
+    // Lifetime of the access token in seconds
+    private long expiresIn;
 }
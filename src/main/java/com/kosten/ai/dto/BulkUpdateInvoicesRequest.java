@@ -0,0 +1,38 @@
+package com.kosten.ai.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+public class BulkUpdateInvoicesRequest {
+    
+    // Either an explicit list of invoice ids or a filter selects the invoices
+    private List<Long> ids;
+    private Filter filter;
+    
+    private Changes changes;
+    
+    @Data
+    public static class Filter {
+        private String vendor; // exact match
+        private Long projectId;
+        
+        @JsonFormat(pattern = "yyyy-MM-dd")
+        private LocalDate startDate;
+        
+        @JsonFormat(pattern = "yyyy-MM-dd")
+        private LocalDate endDate;
+    }
+    
+    @Data
+    public static class Changes {
+        private Long projectId;
+        private Boolean removeFromProject;
+        private String vendor;
+        private String invoiceDate; // Format: YYYY-MM-DD
+        private String description;
+    }
+}
@@ -0,0 +1,28 @@
+package com.kosten.ai.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+@Data
+public class CreateUploadSessionRequest {
+    
+    private Long projectId;
+    
+    @NotBlank(message = "File name is required")
+    private String fileName;
+    
+    @NotBlank(message = "Content type is required")
+    private String contentType;
+    
+    @NotNull(message = "Total size is required")
+    @Positive(message = "Total size must be > 0")
+    private Long totalSize;
+    
+    // Hex-encoded SHA-256 of the whole file, verified on completion
+    @NotBlank(message = "SHA-256 checksum is required")
+    @Pattern(regexp = "[0-9a-fA-F]{64}", message = "SHA-256 checksum must be 64 hex characters")
+    private String sha256;
+}
@@ -0,0 +1,19 @@
+package com.kosten.ai.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    
+    // Opaque token to pass as "cursor" for the next page, null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,27 @@
+package com.kosten.ai.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExtractionJobResponse {
+    private Long id;
+    private String status;
+    private Long projectId;
+    private String fileName;
+    private int attempts;
+    private int maxAttempts;
+    private LocalDateTime nextAttemptAt;
+    private String lastError;
+    
+    // Set once the job has succeeded
+    private Long invoiceId;
+    
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,36 @@
+package com.kosten.ai.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceExportRow {
+    private Long id;
+    private Long projectId;
+    private String projectName;
+    private String invoiceNumber;
+    private String vendor;
+    private BigDecimal amount;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private LocalDate invoiceDate;
+    
+    private String description;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime uploadedAt;
+    
+    private String fileName;
+    
+    @JsonIgnore
+    private String contentType;
+}
@@ -1,13 +1,17 @@
 package com.kosten.ai.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class InvoiceResponse {
     private Long id;
     private Long projectId;
@@ -25,4 +29,7 @@ public class InvoiceResponse {
     private LocalDateTime uploadedAt;
     
     private String fileName;
+    
+    // Earlier invoice with the same vendor, invoice number and amount, if any
+    private Long duplicateOfId;
 }
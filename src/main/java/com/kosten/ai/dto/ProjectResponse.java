@@ -17,4 +17,7 @@ public class ProjectResponse {
     
     private Integer invoiceCount;
     private BigDecimal totalCost;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime lastInvoiceAt;
 }
@@ -0,0 +1,17 @@
+package com.kosten.ai.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpendBucket {
+    private String key;
+    private String label;
+    private long invoiceCount;
+    private BigDecimal total;
+}
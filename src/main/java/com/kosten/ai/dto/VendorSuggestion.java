@@ -0,0 +1,13 @@
+package com.kosten.ai.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VendorSuggestion {
+    private String vendor;
+    private long invoiceCount;
+}
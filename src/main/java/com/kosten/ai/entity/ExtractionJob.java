@@ -0,0 +1,76 @@
+package com.kosten.ai.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Generated;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "extraction_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExtractionJob {
+
+    public enum Status {
+        PENDING, RUNNING, SUCCEEDED, DEAD
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Plain ids instead of associations: the worker only passes them on
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "project_id")
+    private Long projectId;
+
+    @Column(name = "invoice_id")
+    private Long invoiceId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.PENDING;
+
+    private String fileName;
+
+    @Column(nullable = false)
+    private String contentType;
+
+    // Cleared once the invoice (which keeps its own copy) has been saved
+    @Column(name = "file_data")
+    private byte[] fileData;
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(nullable = false)
+    private Integer maxAttempts;
+
+    // Timestamps are set by the database on insert (DEFAULT now()) and changed only by the native
+    // state transitions of the repository
+    @Generated
+    @Column(nullable = false, insertable = false, updatable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 128)
+    private String lockedBy;
+
+    private LocalDateTime lockedUntil;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @Generated
+    @Column(nullable = false, insertable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Generated
+    @Column(nullable = false, insertable = false, updatable = false)
+    private LocalDateTime updatedAt;
+}
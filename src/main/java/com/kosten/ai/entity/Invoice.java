@@ -16,8 +16,10 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class Invoice {
     
+    // Pooled sequence instead of IDENTITY so that Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoices_id_seq")
+    @SequenceGenerator(name = "invoices_id_seq", sequenceName = "invoices_id_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -42,7 +44,7 @@ public class Invoice {
     @Column(length = 1000)
     private String description;
     
-    @Column(nullable = false)
+    @Column(name = "uploaded_at", nullable = false)
     private LocalDateTime uploadedAt = LocalDateTime.now();
     
     private String fileName;
@@ -54,4 +56,10 @@ public class Invoice {
     private byte[] imageData;
     
     private String contentType;
+    
+    @Column(name = "perceptual_hash")
+    private Long perceptualHash;
+    
+    @Column(name = "duplicate_of_id")
+    private Long duplicateOfId;
 }
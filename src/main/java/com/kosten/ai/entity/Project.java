@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -29,9 +30,17 @@ public class Project {
     @Column(length = 500)
     private String description;
     
-    @Column(nullable = false)
+    @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
     
-    @OneToMany(mappedBy = "project", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    // Denormalized totals, maintained by ProjectTotalsService on every invoice write
+    private Integer invoiceCount = 0;
+    
+    private BigDecimal totalCost = BigDecimal.ZERO;
+    
+    private LocalDateTime lastInvoiceAt;
+    
+    // No cascade: invoices are removed with set-based deletes, see ProjectService.deleteProject
+    @OneToMany(mappedBy = "project", fetch = FetchType.LAZY)
     private List<Invoice> invoices;
 }
@@ -0,0 +1,45 @@
+package com.kosten.ai.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "refresh_tokens")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // All tokens created from one login by rotation
+    @Column(nullable = false, length = 36)
+    private String familyId;
+
+    // SHA-256 of the token, the token itself is never stored
+    @Column(nullable = false, unique = true, length = 64)
+    private String tokenHash;
+
+    // The user's token version at issue time; logout on all devices invalidates the token
+    @Column(nullable = false)
+    private Integer tokenVersion;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    private LocalDateTime usedAt;
+
+    private LocalDateTime revokedAt;
+}
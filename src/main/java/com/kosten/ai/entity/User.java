@@ -37,9 +37,14 @@ public class User {
     @Column(nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
     
-    @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    // Part of every token; incremented to revoke all tokens issued so far
+    @Column(nullable = false)
+    private Integer tokenVersion = 0;
+    
+    // No cascade: projects and invoices are removed with set-based deletes, see UserService.deleteCurrentUser
+    @OneToMany(mappedBy = "user", fetch = FetchType.LAZY)
     private List<Project> projects;
     
-    @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @OneToMany(mappedBy = "user", fetch = FetchType.LAZY)
     private List<Invoice> invoices;
 }
@@ -0,0 +1,77 @@
+package com.kosten.ai.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.kosten.ai.entity.ExtractionJob;
+
+/**
+ * State transitions are single native statements using the database clock, so leases and
+ * retry times are consistent across instances. Every transition of a running job is guarded by
+ * {@code locked_by}, so a worker whose lease has expired cannot overwrite the outcome of the
+ * worker that took the job over.
+ */
+@Repository
+public interface ExtractionJobRepository extends JpaRepository<ExtractionJob, Long> {
+
+    Optional<ExtractionJob> findByIdAndUserId(Long id, Long userId);
+
+    @Query(value = "SELECT j.id FROM extraction_jobs j " +
+           "WHERE (j.status = 'PENDING' AND j.next_attempt_at <= now()) " +
+           "OR (j.status = 'RUNNING' AND j.locked_until < now() AND j.attempts < j.max_attempts) " +
+           "ORDER BY j.next_attempt_at " +
+           "LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockClaimableIds(@Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "UPDATE extraction_jobs SET status = 'RUNNING', locked_by = :node, " +
+           "locked_until = now() + :leaseSeconds * interval '1 second', attempts = attempts + 1, updated_at = now() " +
+           "WHERE id IN (:ids)", nativeQuery = true)
+    int markRunning(@Param("ids") Collection<Long> ids, @Param("node") String node, @Param("leaseSeconds") long leaseSeconds);
+
+    @Modifying
+    @Query(value = "UPDATE extraction_jobs SET status = 'SUCCEEDED', invoice_id = :invoiceId, file_data = NULL, " +
+           "locked_by = NULL, locked_until = NULL, last_error = NULL, updated_at = now() " +
+           "WHERE id = :id AND status = 'RUNNING' AND locked_by = :node", nativeQuery = true)
+    int markSucceeded(@Param("id") Long id, @Param("node") String node, @Param("invoiceId") Long invoiceId);
+
+    @Modifying
+    @Query(value = "UPDATE extraction_jobs SET status = 'PENDING', " +
+           "next_attempt_at = now() + :delaySeconds * interval '1 second', " +
+           "locked_by = NULL, locked_until = NULL, last_error = :error, updated_at = now() " +
+           "WHERE id = :id AND status = 'RUNNING' AND locked_by = :node", nativeQuery = true)
+    int scheduleRetry(@Param("id") Long id, @Param("node") String node,
+                      @Param("delaySeconds") long delaySeconds, @Param("error") String error);
+
+    @Modifying
+    @Query(value = "UPDATE extraction_jobs SET status = 'DEAD', locked_by = NULL, locked_until = NULL, " +
+           "last_error = :error, updated_at = now() " +
+           "WHERE id = :id AND status = 'RUNNING' AND locked_by = :node", nativeQuery = true)
+    int markDead(@Param("id") Long id, @Param("node") String node, @Param("error") String error);
+
+    // Jobs whose last attempt was lost with its node and that have no attempts left
+    @Modifying
+    @Query(value = "UPDATE extraction_jobs SET status = 'DEAD', locked_by = NULL, locked_until = NULL, " +
+           "last_error = 'Lease expired after the last attempt', updated_at = now() " +
+           "WHERE status = 'RUNNING' AND locked_until < now() AND attempts >= max_attempts", nativeQuery = true)
+    int markExpiredLeasesDead();
+
+    // Hands the jobs of a stopping node back without counting the interrupted attempt
+    @Modifying
+    @Query(value = "UPDATE extraction_jobs SET status = 'PENDING', attempts = attempts - 1, " +
+           "locked_by = NULL, locked_until = NULL, updated_at = now() " +
+           "WHERE status = 'RUNNING' AND locked_by = :node", nativeQuery = true)
+    int releaseClaims(@Param("node") String node);
+
+    @Modifying
+    @Query(value = "DELETE FROM extraction_jobs WHERE status IN ('SUCCEEDED', 'DEAD') " +
+           "AND updated_at < now() - :retentionDays * interval '1 day'", nativeQuery = true)
+    int deleteFinishedBefore(@Param("retentionDays") int retentionDays);
+}
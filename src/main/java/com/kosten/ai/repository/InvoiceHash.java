@@ -0,0 +1,6 @@
+package com.kosten.ai.repository;
+
+public interface InvoiceHash {
+    Long getId();
+    Long getPerceptualHash();
+}
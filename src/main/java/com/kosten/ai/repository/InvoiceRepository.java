@@ -1,20 +1,52 @@
 package com.kosten.ai.repository;
 
+import com.kosten.ai.dto.InvoiceExportRow;
+import com.kosten.ai.dto.InvoiceResponse;
 import com.kosten.ai.entity.Invoice;
 import com.kosten.ai.entity.Project;
 import com.kosten.ai.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
+    
+    // Selects exactly the InvoiceResponse columns, joining the project name in the same statement
+    String INVOICE_RESPONSE_SELECT = "SELECT new com.kosten.ai.dto.InvoiceResponse(" +
+            "i.id, p.id, p.name, i.invoiceNumber, i.vendor, i.amount, i.invoiceDate, i.description, " +
+            "i.uploadedAt, i.fileName, i.duplicateOfId) " +
+            "FROM Invoice i LEFT JOIN i.project p ";
+    
+    String EXPORT_ROW_SELECT = "SELECT new com.kosten.ai.dto.InvoiceExportRow(" +
+            "i.id, p.id, p.name, i.invoiceNumber, i.vendor, i.amount, i.invoiceDate, i.description, " +
+            "i.uploadedAt, i.fileName, i.contentType) " +
+            "FROM Invoice i LEFT JOIN i.project p ";
+    
+    // Must match the expression of idx_invoices_search_document in db/migration/V3__invoice_search_indexes.sql
+    String SEARCH_DOCUMENT = "to_tsvector('simple', coalesce(i.invoice_number, '') || ' ' || " +
+            "coalesce(i.vendor, '') || ' ' || coalesce(i.description, ''))";
+    
+    String FULL_TEXT_MATCH = "WHERE i.user_id = :userId " +
+            "AND (" + SEARCH_DOCUMENT + " @@ plainto_tsquery('simple', :query) " +
+            "OR lower(i.invoice_number) % lower(:query) " +
+            "OR lower(i.vendor) % lower(:query) " +
+            "OR lower(:query) <% lower(i.description)) ";
+    
     List<Invoice> findByUser(User user);
     Page<Invoice> findByUserOrderByUploadedAtDesc(User user, Pageable pageable);
     List<Invoice> findByProjectOrderByUploadedAtDesc(Project project);
@@ -28,18 +60,142 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
     // Search by date range
     List<Invoice> findByUserAndInvoiceDateBetweenOrderByUploadedAtDesc(User user, LocalDate startDate, LocalDate endDate);
     
+    @Query("SELECT i.vendor AS vendor, COUNT(i) AS invoiceCount FROM Invoice i " +
+           "WHERE i.user.id = :userId GROUP BY i.vendor")
+    List<VendorCount> countVendorsByUserId(@Param("userId") Long userId);
+    
+    // Ownership is part of every query: another user's invoice is simply not found
+    Optional<Invoice> findByIdAndUserId(Long id, Long userId);
+    
+    // Listing projections
+    @Query(value = INVOICE_RESPONSE_SELECT + "WHERE i.user.id = :userId ORDER BY i.uploadedAt DESC",
+           countQuery = "SELECT COUNT(i) FROM Invoice i WHERE i.user.id = :userId")
+    Page<InvoiceResponse> findResponsesByUserId(@Param("userId") Long userId, Pageable pageable);
+    
+    @Query(INVOICE_RESPONSE_SELECT + "WHERE i.id = :id AND i.user.id = :userId")
+    Optional<InvoiceResponse> findResponseByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+    
+    @Query(INVOICE_RESPONSE_SELECT + "WHERE i.id IN :ids")
+    List<InvoiceResponse> findResponsesByIdIn(@Param("ids") List<Long> ids);
+    
+    @Query(INVOICE_RESPONSE_SELECT + "WHERE p.id = :projectId AND i.user.id = :userId ORDER BY i.uploadedAt DESC")
+    List<InvoiceResponse> findResponsesByProjectIdAndUserId(@Param("projectId") Long projectId,
+                                                            @Param("userId") Long userId);
+    
+    // Keyset pagination: (uploadedAt, id) DESC, no count query
+    @Query(INVOICE_RESPONSE_SELECT + "WHERE i.user.id = :userId ORDER BY i.uploadedAt DESC, i.id DESC")
+    List<InvoiceResponse> findFirstResponsesByUserId(@Param("userId") Long userId, Pageable pageable);
+    
+    @Query(INVOICE_RESPONSE_SELECT + "WHERE i.user.id = :userId " +
+           "AND i.uploadedAt <= :uploadedAt AND (i.uploadedAt < :uploadedAt OR i.id < :id) " +
+           "ORDER BY i.uploadedAt DESC, i.id DESC")
+    List<InvoiceResponse> findResponsesByUserIdAfter(@Param("userId") Long userId,
+                                                     @Param("uploadedAt") LocalDateTime uploadedAt,
+                                                     @Param("id") Long id,
+                                                     Pageable pageable);
+    
     // Combined search with pagination
-    @Query("SELECT i FROM Invoice i WHERE i.user = :user " +
+    @Query(value = INVOICE_RESPONSE_SELECT + "WHERE i.user.id = :userId " +
+           "AND (COALESCE(:invoiceNumber, '') = '' OR LOWER(i.invoiceNumber) LIKE LOWER(CONCAT('%', :invoiceNumber, '%'))) " +
+           "AND (COALESCE(:vendor, '') = '' OR LOWER(i.vendor) LIKE LOWER(CONCAT('%', :vendor, '%'))) " +
+           "AND (:startDate IS NULL OR i.invoiceDate >= :startDate) " +
+           "AND (:endDate IS NULL OR i.invoiceDate <= :endDate) " +
+           "ORDER BY i.uploadedAt DESC",
+           countQuery = "SELECT COUNT(i) FROM Invoice i WHERE i.user.id = :userId " +
+           "AND (COALESCE(:invoiceNumber, '') = '' OR LOWER(i.invoiceNumber) LIKE LOWER(CONCAT('%', :invoiceNumber, '%'))) " +
+           "AND (COALESCE(:vendor, '') = '' OR LOWER(i.vendor) LIKE LOWER(CONCAT('%', :vendor, '%'))) " +
+           "AND (:startDate IS NULL OR i.invoiceDate >= :startDate) " +
+           "AND (:endDate IS NULL OR i.invoiceDate <= :endDate)")
+    Page<InvoiceResponse> searchInvoices(@Param("userId") Long userId,
+                                         @Param("invoiceNumber") String invoiceNumber,
+                                         @Param("vendor") String vendor,
+                                         @Param("startDate") LocalDate startDate,
+                                         @Param("endDate") LocalDate endDate,
+                                         Pageable pageable);
+    
+    @Query(INVOICE_RESPONSE_SELECT + "WHERE i.user.id = :userId " +
            "AND (COALESCE(:invoiceNumber, '') = '' OR LOWER(i.invoiceNumber) LIKE LOWER(CONCAT('%', :invoiceNumber, '%'))) " +
            "AND (COALESCE(:vendor, '') = '' OR LOWER(i.vendor) LIKE LOWER(CONCAT('%', :vendor, '%'))) " +
            "AND (:startDate IS NULL OR i.invoiceDate >= :startDate) " +
            "AND (:endDate IS NULL OR i.invoiceDate <= :endDate) " +
-           "ORDER BY i.uploadedAt DESC")
-    Page<Invoice> searchInvoices(@Param("user") User user, 
-                                  @Param("invoiceNumber") String invoiceNumber,
-                                  @Param("vendor") String vendor,
-                                  @Param("startDate") LocalDate startDate,
-                                  @Param("endDate") LocalDate endDate,
-                                  Pageable pageable);
+           "AND (:cursorUploadedAt IS NULL OR (i.uploadedAt <= :cursorUploadedAt " +
+           "AND (i.uploadedAt < :cursorUploadedAt OR i.id < :cursorId))) " +
+           "ORDER BY i.uploadedAt DESC, i.id DESC")
+    List<InvoiceResponse> searchInvoicesAfter(@Param("userId") Long userId,
+                                              @Param("invoiceNumber") String invoiceNumber,
+                                              @Param("vendor") String vendor,
+                                              @Param("startDate") LocalDate startDate,
+                                              @Param("endDate") LocalDate endDate,
+                                              @Param("cursorUploadedAt") LocalDateTime cursorUploadedAt,
+                                              @Param("cursorId") Long cursorId,
+                                              Pageable pageable);
+    
+    // Full-text search over number, vendor and description with trigram typo tolerance (PostgreSQL)
+    @Query(value = "SELECT i.id AS id, CAST(" +
+           "2 * ts_rank(" + SEARCH_DOCUMENT + ", plainto_tsquery('simple', :query)) + " +
+           "greatest(similarity(lower(i.invoice_number), lower(:query)), " +
+           "similarity(lower(i.vendor), lower(:query)), " +
+           "word_similarity(lower(:query), lower(coalesce(i.description, '')))) " +
+           "AS double precision) AS score " +
+           "FROM invoices i " + FULL_TEXT_MATCH +
+           "ORDER BY score DESC, i.uploaded_at DESC, i.id DESC",
+           countQuery = "SELECT COUNT(*) FROM invoices i " + FULL_TEXT_MATCH,
+           nativeQuery = true)
+    Page<InvoiceSearchHit> searchFullText(@Param("userId") Long userId,
+                                          @Param("query") String query,
+                                          Pageable pageable);
+    
+    // Export: read through a server-side cursor, must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(EXPORT_ROW_SELECT + "WHERE i.user.id = :userId " +
+           "AND (:projectId IS NULL OR p.id = :projectId) " +
+           "AND (:startDate IS NULL OR i.invoiceDate >= :startDate) " +
+           "AND (:endDate IS NULL OR i.invoiceDate <= :endDate) " +
+           "ORDER BY i.invoiceDate, i.id")
+    Stream<InvoiceExportRow> streamExportRows(@Param("userId") Long userId,
+                                              @Param("projectId") Long projectId,
+                                              @Param("startDate") LocalDate startDate,
+                                              @Param("endDate") LocalDate endDate);
+    
+    @Query("SELECT i.imageData FROM Invoice i WHERE i.id = :id")
+    byte[] findImageDataById(@Param("id") Long id);
+    
+    @Query("SELECT i.id FROM Invoice i WHERE i.user.id = :userId AND i.project.id = :projectId " +
+           "AND i.imageData IS NOT NULL")
+    List<Long> findIdsWithFileByUserIdAndProjectId(@Param("userId") Long userId,
+                                                   @Param("projectId") Long projectId);
+    
+    @Query("SELECT i.imageData AS imageData, i.contentType AS contentType FROM Invoice i " +
+           "WHERE i.id = :id AND i.user.id = :userId")
+    Optional<InvoiceFile> findFileByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+    
+    // Source of the per-user near-duplicate index
+    @Query("SELECT i.id AS id, i.perceptualHash AS perceptualHash FROM Invoice i " +
+           "WHERE i.user.id = :userId AND i.perceptualHash IS NOT NULL")
+    List<InvoiceHash> findHashesByUserId(@Param("userId") Long userId);
+    
+    // Oldest invoice of the user with the same invoice number, vendor and amount
+    @Query("SELECT MIN(i.id) FROM Invoice i WHERE i.user.id = :userId " +
+           "AND lower(i.invoiceNumber) = lower(:invoiceNumber) AND lower(i.vendor) = lower(:vendor) " +
+           "AND i.amount = :amount")
+    Long findDuplicateId(@Param("userId") Long userId,
+                         @Param("invoiceNumber") String invoiceNumber,
+                         @Param("vendor") String vendor,
+                         @Param("amount") BigDecimal amount);
+    
+    // Source of the per-user analytics snapshot
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT i.amount AS amount, i.invoiceDate AS invoiceDate, i.vendor AS vendor, " +
+           "p.id AS projectId, p.name AS projectName " +
+           "FROM Invoice i LEFT JOIN i.project p WHERE i.user.id = :userId")
+    Stream<SpendRow> streamSpendRows(@Param("userId") Long userId);
+    
+    // Set-based deletes, no entities (and no image blobs) are loaded
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Invoice i WHERE i.project.id = :projectId")
+    int deleteAllByProjectId(@Param("projectId") Long projectId);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Invoice i WHERE i.user.id = :userId")
+    int deleteAllByUserId(@Param("userId") Long userId);
 }
-
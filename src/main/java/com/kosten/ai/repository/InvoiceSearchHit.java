@@ -0,0 +1,9 @@
+package com.kosten.ai.repository;
+
+/**
+ * Ranked result row of the full-text/trigram invoice search.
+ */
+public interface InvoiceSearchHit {
+    Long getId();
+    Double getScore();
+}
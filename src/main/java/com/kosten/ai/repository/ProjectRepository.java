@@ -5,14 +5,98 @@ import com.kosten.ai.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ProjectRepository extends JpaRepository<Project, Long> {
     List<Project> findByUser(User user);
-    Page<Project> findByUserOrderByCreatedAtDesc(User user, Pageable pageable);
-    Optional<Project> findByIdAndUser(Long id, User user);
+    
+    // Scoped by the user id from the token, no user row needed
+    Page<Project> findByUserIdOrderByCreatedAtDesc(Long userId, Pageable pageable);
+    Optional<Project> findByIdAndUserId(Long id, Long userId);
+    boolean existsByIdAndUserId(Long id, Long userId);
+    
+    // Keyset pagination: (createdAt, id) DESC, no count query
+    List<Project> findByUserIdOrderByCreatedAtDescIdDesc(Long userId, Pageable pageable);
+    
+    @Query("SELECT p FROM Project p WHERE p.user.id = :userId " +
+           "AND p.createdAt <= :createdAt AND (p.createdAt < :createdAt OR p.id < :id) " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Project> findByUserIdAfter(@Param("userId") Long userId,
+                                    @Param("createdAt") LocalDateTime createdAt,
+                                    @Param("id") Long id,
+                                    Pageable pageable);
+    
+    // Incremental maintenance of the denormalized invoice totals
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Project p SET p.invoiceCount = COALESCE(p.invoiceCount, 0) + 1, " +
+           "p.totalCost = COALESCE(p.totalCost, 0) + :amount, " +
+           "p.lastInvoiceAt = CASE WHEN p.lastInvoiceAt IS NULL OR p.lastInvoiceAt < :uploadedAt " +
+           "THEN :uploadedAt ELSE p.lastInvoiceAt END " +
+           "WHERE p.id = :projectId")
+    int addInvoiceToTotals(@Param("projectId") Long projectId,
+                           @Param("amount") BigDecimal amount,
+                           @Param("uploadedAt") LocalDateTime uploadedAt);
+    
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Project p SET p.invoiceCount = COALESCE(p.invoiceCount, 0) + :count, " +
+           "p.totalCost = COALESCE(p.totalCost, 0) + :amount, " +
+           "p.lastInvoiceAt = CASE WHEN p.lastInvoiceAt IS NULL OR p.lastInvoiceAt < :uploadedAt " +
+           "THEN :uploadedAt ELSE p.lastInvoiceAt END " +
+           "WHERE p.id = :projectId")
+    int addInvoicesToTotals(@Param("projectId") Long projectId,
+                            @Param("count") int count,
+                            @Param("amount") BigDecimal amount,
+                            @Param("uploadedAt") LocalDateTime uploadedAt);
+    
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Project p SET p.invoiceCount = COALESCE(p.invoiceCount, 0) - 1, " +
+           "p.totalCost = COALESCE(p.totalCost, 0) - :amount, " +
+           "p.lastInvoiceAt = (SELECT MAX(i.uploadedAt) FROM Invoice i WHERE i.project.id = :projectId) " +
+           "WHERE p.id = :projectId")
+    int removeInvoiceFromTotals(@Param("projectId") Long projectId,
+                                @Param("amount") BigDecimal amount);
+    
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Project p SET p.totalCost = COALESCE(p.totalCost, 0) + :delta WHERE p.id = :projectId")
+    int adjustTotalCost(@Param("projectId") Long projectId, @Param("delta") BigDecimal delta);
+    
+    // Repair: projects whose totals differ from the invoices table
+    @Query(value = "SELECT p.id FROM projects p LEFT JOIN (" +
+           "SELECT i.project_id, COUNT(*) AS invoice_count, SUM(i.amount) AS total_cost, " +
+           "MAX(i.uploaded_at) AS last_invoice_at FROM invoices i " +
+           "WHERE i.project_id IS NOT NULL GROUP BY i.project_id) t ON t.project_id = p.id " +
+           "WHERE p.invoice_count IS DISTINCT FROM COALESCE(t.invoice_count, 0) " +
+           "OR p.total_cost IS DISTINCT FROM COALESCE(t.total_cost, 0) " +
+           "OR p.last_invoice_at IS DISTINCT FROM t.last_invoice_at", nativeQuery = true)
+    List<Long> findIdsWithDriftedTotals();
+    
+    // The incremental updates lock the same rows, so a recompute after this sees committed invoices only
+    @Query(value = "SELECT id FROM projects WHERE id IN (:projectIds) ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Long> lockForUpdate(@Param("projectIds") Collection<Long> projectIds);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Project p SET " +
+           "p.invoiceCount = (SELECT COUNT(i) FROM Invoice i WHERE i.project = p), " +
+           "p.totalCost = (SELECT COALESCE(SUM(i.amount), 0) FROM Invoice i WHERE i.project = p), " +
+           "p.lastInvoiceAt = (SELECT MAX(i.uploadedAt) FROM Invoice i WHERE i.project = p) " +
+           "WHERE p.id IN :projectIds")
+    int recomputeTotals(@Param("projectIds") Collection<Long> projectIds);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Project p WHERE p.id = :projectId")
+    int deleteProjectById(@Param("projectId") Long projectId);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Project p WHERE p.user.id = :userId")
+    int deleteAllByUserId(@Param("userId") Long userId);
 }
@@ -0,0 +1,12 @@
+package com.kosten.ai.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public interface SpendRow {
+    BigDecimal getAmount();
+    LocalDate getInvoiceDate();
+    String getVendor();
+    Long getProjectId();
+    String getProjectName();
+}
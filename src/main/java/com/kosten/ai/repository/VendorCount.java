@@ -0,0 +1,6 @@
+package com.kosten.ai.repository;
+
+public interface VendorCount {
+    String getVendor();
+    Long getInvoiceCount();
+}
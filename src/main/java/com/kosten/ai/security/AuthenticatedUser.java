@@ -0,0 +1,19 @@
+package com.kosten.ai.security;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+import java.time.Instant;
+
+/**
+ * Principal built from the signed token claims alone, without loading the user.
+ * {@code Authentication.getName()} returns the username. The token id and expiry allow revoking
+ * the token the request was made with.
+ */
+public record AuthenticatedUser(Long id, String username, int tokenVersion, String tokenId, Instant tokenExpiresAt)
+        implements AuthenticatedPrincipal {
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
@@ -0,0 +1,48 @@
+package com.kosten.ai.security;
+
+import com.kosten.ai.entity.User;
+import com.kosten.ai.exception.ResourceNotFoundException;
+import com.kosten.ai.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+/**
+ * The user of the current request. The id comes from the token claims, so resolving it costs no
+ * query; services scope their repository queries with it instead of loading the user first.
+ */
+@Component
+@RequiredArgsConstructor
+public class CurrentUser {
+
+    private final UserRepository userRepository;
+
+    public Long id() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication.getPrincipal() instanceof AuthenticatedUser user) {
+            return user.id();
+        }
+        // Authentications that are not built from a token only carry the username
+        String username = authentication.getName();
+        return userRepository.findByUsername(username)
+                .map(User::getId)
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
+    }
+
+    /**
+     * Uninitialized reference for setting associations, does not hit the database.
+     */
+    public User reference() {
+        return userRepository.getReferenceById(id());
+    }
+
+    /**
+     * Loads the full user row, for the few operations that need more than the id.
+     */
+    public User load() {
+        Long id = id();
+        return userRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("User", id));
+    }
+}
@@ -0,0 +1,14 @@
+package com.kosten.ai.security;
+
+import java.time.Instant;
+
+/**
+ * The claims of a token whose signature and expiry have been verified.
+ */
+public record JwtClaims(String subject, Long userId, int tokenVersion, String tokenId,
+                        Instant issuedAt, Instant expiration) {
+
+    public boolean isExpired() {
+        return !Instant.now().isBefore(expiration);
+    }
+}
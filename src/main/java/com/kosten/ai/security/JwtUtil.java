@@ -1,74 +1,137 @@
 package com.kosten.ai.security;
 
+import com.kosten.ai.entity.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Issues and verifies access tokens. Besides the username, a token carries the user id, the user's
+ * token version and its own id (jti) for individual revocation, so requests can be authenticated
+ * without loading the user. Access tokens are short-lived; clients renew them with a refresh
+ * token. The signing key and the parser are built once; both are immutable and shared by all
+ * request threads. Verified tokens can be kept in a bounded cache keyed by the SHA-256 of the
+ * token until they expire, so repeated requests with the same token skip signature verification
+ * and JSON parsing.
+ */
 @Component
 public class JwtUtil {
 
-    @Value("${jwt.secret}")
-    private String secret;
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String TOKEN_VERSION_CLAIM = "ver";
 
-    @Value("${jwt.expiration}")
-    private Long expiration;
+    private final SecretKey signingKey;
+    private final JwtParser parser;
+    private final long expiration;
+    private final int cacheMaxSize;
+    private final Map<String, JwtClaims> verifiedTokens = new ConcurrentHashMap<>();
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    public JwtUtil(@Value("${jwt.secret}") String secret,
+                   @Value("${jwt.expiration}") long expiration,
+                   @Value("${jwt.cache.max-size:10000}") int cacheMaxSize) {
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser().verifyWith(signingKey).build();
+        this.expiration = expiration;
+        this.cacheMaxSize = cacheMaxSize;
     }
 
-    public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
-    }
+    /**
+     * Verifies the token and returns its claims.
+     *
+     * @throws JwtException if the token is malformed, has an invalid signature or is expired
+     */
+    public JwtClaims parseToken(String token) {
+        if (cacheMaxSize <= 0) {
+            return verify(token);
+        }
 
-    public Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
+        String key = hash(token);
+        JwtClaims cached = verifiedTokens.get(key);
+        if (cached != null) {
+            if (!cached.isExpired()) {
+                return cached;
+            }
+            verifiedTokens.remove(key, cached);
+        }
 
-    public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+        JwtClaims claims = verify(token);
+        if (verifiedTokens.size() >= cacheMaxSize) {
+            evictExpired();
+        }
+        // A full cache just stops caching until entries expire
+        if (verifiedTokens.size() < cacheMaxSize) {
+            verifiedTokens.put(key, claims);
+        }
+        return claims;
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    @Scheduled(fixedDelayString = "${jwt.cache.eviction-interval-ms:60000}")
+    public void evictExpired() {
+        Instant now = Instant.now();
+        verifiedTokens.values().removeIf(claims -> !now.isBefore(claims.expiration()));
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    /**
+     * Lifetime of an access token in milliseconds.
+     */
+    public long getExpiration() {
+        return expiration;
     }
 
-    public String generateToken(UserDetails userDetails) {
+    public String generateToken(User user) {
         Map<String, Object> claims = new HashMap<>();
-        return createToken(claims, userDetails.getUsername());
+        claims.put(USER_ID_CLAIM, user.getId());
+        claims.put(TOKEN_VERSION_CLAIM, user.getTokenVersion());
+        return createToken(claims, user.getUsername());
     }
 
     private String createToken(Map<String, Object> claims, String subject) {
         return Jwts.builder()
                 .claims(claims)
                 .subject(subject)
+                .id(UUID.randomUUID().toString())
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey(), Jwts.SIG.HS256)
+                .signWith(signingKey, Jwts.SIG.HS256)
                 .compact();
     }
 
-    public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+    private JwtClaims verify(String token) {
+        // The parser rejects expired tokens itself
+        Claims claims = parser.parseSignedClaims(token).getPayload();
+        Long userId = claims.get(USER_ID_CLAIM, Long.class);
+        Integer tokenVersion = claims.get(TOKEN_VERSION_CLAIM, Integer.class);
+        if (claims.getSubject() == null || claims.getExpiration() == null || userId == null || tokenVersion == null) {
+            throw new JwtException("Token is missing required claims");
+        }
+        return new JwtClaims(claims.getSubject(), userId, tokenVersion, claims.getId(),
+                claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null,
+                claims.getExpiration().toInstant());
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
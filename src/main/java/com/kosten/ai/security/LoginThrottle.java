@@ -0,0 +1,143 @@
+package com.kosten.ai.security;
+
+import com.kosten.ai.exception.TooManyRequestsException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Counts failed logins per client IP and per username in fixed windows. A key that reaches its
+ * limit is blocked until its window ends. The counters live in a fixed number of stripes, each a
+ * small LRU map behind its own lock, so concurrent logins rarely contend and memory stays bounded
+ * however many keys an attacker cycles through.
+ */
+@Component
+public class LoginThrottle {
+
+    private final Stripe[] stripes;
+    private final long windowMillis;
+    private final int maxFailuresPerUsername;
+    private final int maxFailuresPerIp;
+
+    public LoginThrottle(@Value("${security.login.stripes:64}") int stripes,
+                         @Value("${security.login.max-keys:100000}") int maxKeys,
+                         @Value("${security.login.window-seconds:900}") long windowSeconds,
+                         @Value("${security.login.max-failures-per-username:5}") int maxFailuresPerUsername,
+                         @Value("${security.login.max-failures-per-ip:50}") int maxFailuresPerIp) {
+        int stripeCount = Integer.highestOneBit(Math.max(1, stripes));
+        int keysPerStripe = Math.max(16, maxKeys / stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(keysPerStripe);
+        }
+        this.windowMillis = windowSeconds * 1000;
+        this.maxFailuresPerUsername = maxFailuresPerUsername;
+        this.maxFailuresPerIp = maxFailuresPerIp;
+    }
+
+    /**
+     * Rejects the attempt with 429 if the IP or the username is currently blocked.
+     */
+    public void checkAllowed(String ip, String username) {
+        long now = System.currentTimeMillis();
+        long retryAfter = Math.max(
+                blockedFor(ipKey(ip), maxFailuresPerIp, now),
+                blockedFor(usernameKey(username), maxFailuresPerUsername, now));
+        if (retryAfter > 0) {
+            throw new TooManyRequestsException("Too many failed login attempts, please retry later",
+                    Math.max(1, retryAfter / 1000));
+        }
+    }
+
+    public void loginFailed(String ip, String username) {
+        long now = System.currentTimeMillis();
+        recordFailure(ipKey(ip), now);
+        recordFailure(usernameKey(username), now);
+    }
+
+    /**
+     * Clears the username's failures; the IP keeps its count, so one valid account cannot be used
+     * to reset the budget for guessing others.
+     */
+    public void loginSucceeded(String username) {
+        String key = usernameKey(username);
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.counters.remove(key);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${security.login.eviction-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.counters.values().removeIf(counter -> now - counter.windowStart >= windowMillis);
+            }
+        }
+    }
+
+    private long blockedFor(String key, int maxFailures, long now) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Counter counter = stripe.counters.get(key);
+            if (counter == null || counter.failures < maxFailures) {
+                return 0;
+            }
+            return Math.max(0, counter.windowStart + windowMillis - now);
+        }
+    }
+
+    private void recordFailure(String key, long now) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Counter counter = stripe.counters.get(key);
+            if (counter == null || now - counter.windowStart >= windowMillis) {
+                counter = new Counter(now);
+                stripe.counters.put(key, counter);
+            }
+            counter.failures++;
+        }
+    }
+
+    private Stripe stripeFor(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static String ipKey(String ip) {
+        return "ip:" + ip;
+    }
+
+    private static String usernameKey(String username) {
+        return "user:" + (username != null ? username.trim().toLowerCase(Locale.ROOT) : "");
+    }
+
+    private static final class Stripe {
+
+        private final Map<String, Counter> counters;
+
+        Stripe(int maxKeys) {
+            this.counters = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Counter> eldest) {
+                    return size() > maxKeys;
+                }
+            };
+        }
+    }
+
+    private static final class Counter {
+
+        private final long windowStart;
+        private int failures;
+
+        Counter(long windowStart) {
+            this.windowStart = windowStart;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.kosten.ai.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kosten.ai.dto.ErrorResponse;
+import com.kosten.ai.service.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Applies {@link RateLimiter} after authentication: requests are limited per user (per client IP
+ * when unauthenticated) and endpoint class, uploads additionally count against the user's daily
+ * AI extraction quota. Remaining budget is reported in {@code X-RateLimit-*} and
+ * {@code X-AI-Quota-*} headers; rejected requests get 429 with {@code Retry-After}.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+
+    public RateLimitFilter(RateLimiter rateLimiter,
+                           ObjectMapper objectMapper,
+                           @Value("${rate-limit.enabled:true}") boolean enabled) {
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !request.getRequestURI().startsWith("/api/")
+                || HttpMethod.OPTIONS.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Long userId = currentUserId();
+        String clientKey = userId != null ? "user:" + userId : "ip:" + request.getRemoteAddr();
+        RateLimiter.LimitClass limitClass = classify(request);
+
+        RateLimiter.Decision decision = rateLimiter.tryAcquire(clientKey, limitClass);
+        response.setHeader("X-RateLimit-Limit", String.valueOf(decision.limit()));
+        response.setHeader("X-RateLimit-Remaining", String.valueOf(decision.remaining()));
+        if (!decision.allowed()) {
+            reject(request, response, decision, "Rate limit exceeded, please slow down");
+            return;
+        }
+
+        boolean extraction = limitClass == RateLimiter.LimitClass.UPLOAD && userId != null;
+        if (extraction) {
+            RateLimiter.Decision quota = rateLimiter.tryConsumeExtraction(userId);
+            response.setHeader("X-AI-Quota-Limit", String.valueOf(quota.limit()));
+            response.setHeader("X-AI-Quota-Remaining", String.valueOf(quota.remaining()));
+            if (!quota.allowed()) {
+                reject(request, response, quota, "Daily AI extraction quota exhausted");
+                return;
+            }
+        }
+
+        filterChain.doFilter(request, response);
+
+        // Rejected before the extraction ran (invalid file, unknown project, shed under load, ...)
+        // or answered with the stored response of an earlier upload
+        if (extraction && (rejectedBeforeExtraction(response) || response.containsHeader(IdempotencyService.REPLAYED_HEADER))) {
+            rateLimiter.refundExtraction(userId);
+        }
+    }
+
+    private static boolean rejectedBeforeExtraction(HttpServletResponse response) {
+        int status = response.getStatus();
+        return (status >= 400 && status < 500)
+                || (status == HttpStatus.SERVICE_UNAVAILABLE.value() && response.containsHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    private static RateLimiter.LimitClass classify(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        if (path.startsWith("/api/auth/")) {
+            return RateLimiter.LimitClass.AUTH;
+        }
+        // Uploads that run an extraction; chunks of resumable uploads count as writes
+        if (HttpMethod.POST.matches(request.getMethod()) && (path.startsWith("/api/invoices/upload/")
+                || (path.startsWith("/api/invoices/uploads/") && path.endsWith("/complete")))) {
+            return RateLimiter.LimitClass.UPLOAD;
+        }
+        if (HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod())) {
+            return RateLimiter.LimitClass.READ;
+        }
+        return RateLimiter.LimitClass.WRITE;
+    }
+
+    private static Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser user) {
+            return user.id();
+        }
+        return null;
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response,
+                        RateLimiter.Decision decision, String message) throws IOException {
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                "Too Many Requests",
+                message,
+                request.getRequestURI()
+        );
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(decision.retryAfterSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), errorResponse);
+    }
+}
@@ -0,0 +1,164 @@
+package com.kosten.ai.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client token buckets and daily AI extraction quotas. Each bucket is a single
+ * {@link AtomicLong} updated with compare-and-set (GCRA: the bucket stores the time at which it
+ * will be full again), so concurrent requests of the same client never block each other. Buckets
+ * live in a fixed number of map shards and are dropped once they have been full for a while.
+ * Limits are enforced per instance.
+ */
+@Component
+public class RateLimiter {
+
+    public enum LimitClass {
+        READ, WRITE, UPLOAD, AUTH
+    }
+
+    public record Decision(boolean allowed, long limit, long remaining, long retryAfterSeconds) {
+    }
+
+    private final Map<LimitClass, Limit> limits = new EnumMap<>(LimitClass.class);
+    private final Map<String, Bucket>[] shards;
+    private final Map<Long, AtomicLong> dailyExtractions = new ConcurrentHashMap<>();
+    private final int dailyExtractionLimit;
+    private final long idleNanos;
+
+    @SuppressWarnings("unchecked")
+    public RateLimiter(@Value("${rate-limit.read.per-second:20}") double readPerSecond,
+                       @Value("${rate-limit.read.burst:40}") int readBurst,
+                       @Value("${rate-limit.write.per-second:5}") double writePerSecond,
+                       @Value("${rate-limit.write.burst:20}") int writeBurst,
+                       @Value("${rate-limit.upload.per-second:0.5}") double uploadPerSecond,
+                       @Value("${rate-limit.upload.burst:5}") int uploadBurst,
+                       @Value("${rate-limit.auth.per-second:1}") double authPerSecond,
+                       @Value("${rate-limit.auth.burst:10}") int authBurst,
+                       @Value("${rate-limit.ai.daily-extractions:200}") int dailyExtractionLimit,
+                       @Value("${rate-limit.shards:16}") int shardCount,
+                       @Value("${rate-limit.idle-eviction-ms:600000}") long idleMillis) {
+        limits.put(LimitClass.READ, new Limit(readPerSecond, readBurst));
+        limits.put(LimitClass.WRITE, new Limit(writePerSecond, writeBurst));
+        limits.put(LimitClass.UPLOAD, new Limit(uploadPerSecond, uploadBurst));
+        limits.put(LimitClass.AUTH, new Limit(authPerSecond, authBurst));
+        this.dailyExtractionLimit = dailyExtractionLimit;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.shards = new Map[Integer.highestOneBit(Math.max(1, shardCount))];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    public Decision tryAcquire(String clientKey, LimitClass limitClass) {
+        Limit limit = limits.get(limitClass);
+        String key = limitClass.name() + ':' + clientKey;
+        long now = System.nanoTime();
+        Bucket bucket = shardFor(key).computeIfAbsent(key, k -> new Bucket(now));
+        return bucket.tryAcquire(limit, now);
+    }
+
+    /**
+     * Counts one AI extraction against the user's quota for the current UTC day.
+     */
+    public Decision tryConsumeExtraction(Long userId) {
+        long today = LocalDate.now(ZoneOffset.UTC).toEpochDay();
+        AtomicLong counter = dailyExtractions.computeIfAbsent(userId, id -> new AtomicLong());
+        while (true) {
+            // Upper 32 bits: epoch day, lower 32 bits: extractions on that day
+            long current = counter.get();
+            long count = (current >>> 32) == today ? current & 0xFFFFFFFFL : 0;
+            if (count >= dailyExtractionLimit) {
+                return new Decision(false, dailyExtractionLimit, 0, secondsUntilTomorrow());
+            }
+            if (counter.compareAndSet(current, (today << 32) | (count + 1))) {
+                return new Decision(true, dailyExtractionLimit, dailyExtractionLimit - count - 1, 0);
+            }
+        }
+    }
+
+    /**
+     * Gives back an extraction whose request failed before it reached the AI service.
+     */
+    public void refundExtraction(Long userId) {
+        long today = LocalDate.now(ZoneOffset.UTC).toEpochDay();
+        AtomicLong counter = dailyExtractions.get(userId);
+        if (counter == null) {
+            return;
+        }
+        while (true) {
+            long current = counter.get();
+            if ((current >>> 32) != today || (current & 0xFFFFFFFFL) == 0) {
+                return;
+            }
+            if (counter.compareAndSet(current, current - 1)) {
+                return;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limit.idle-eviction-ms:600000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        for (Map<String, Bucket> shard : shards) {
+            // A bucket that has been full for the idle time behaves like a new one
+            shard.values().removeIf(bucket -> now - bucket.fullAt.get() > idleNanos);
+        }
+        long today = LocalDate.now(ZoneOffset.UTC).toEpochDay();
+        dailyExtractions.values().removeIf(counter -> (counter.get() >>> 32) != today);
+    }
+
+    private Map<String, Bucket> shardFor(String key) {
+        int hash = key.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+    }
+
+    private static long secondsUntilTomorrow() {
+        long now = System.currentTimeMillis() / 1000;
+        long tomorrow = LocalDate.now(ZoneOffset.UTC).plusDays(1).toEpochDay() * 86400;
+        return Math.max(1, tomorrow - now);
+    }
+
+    private record Limit(long intervalNanos, long burstNanos, int burst) {
+
+        Limit(double perSecond, int burst) {
+            this((long) (TimeUnit.SECONDS.toNanos(1) / perSecond),
+                    (long) (TimeUnit.SECONDS.toNanos(1) / perSecond) * burst, burst);
+        }
+    }
+
+    private static final class Bucket {
+
+        // Time at which the bucket holds its full burst again
+        private final AtomicLong fullAt;
+
+        Bucket(long now) {
+            this.fullAt = new AtomicLong(now);
+        }
+
+        Decision tryAcquire(Limit limit, long now) {
+            while (true) {
+                long current = fullAt.get();
+                long base = Math.max(current, now);
+                long next = base + limit.intervalNanos();
+                if (next - now > limit.burstNanos()) {
+                    long retryAfter = TimeUnit.NANOSECONDS.toSeconds(next - now - limit.burstNanos()) + 1;
+                    return new Decision(false, limit.burst(), 0, retryAfter);
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    long remaining = (limit.burstNanos() - (next - now)) / limit.intervalNanos();
+                    return new Decision(true, limit.burst(), remaining, 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.kosten.ai.security;
+
+import com.kosten.ai.entity.RevokedToken;
+import com.kosten.ai.repository.RevokedTokenRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Access tokens revoked before their expiry, checked on every request. The ids of all revoked,
+ * not yet expired tokens are kept in a Bloom filter, so a token that was never revoked is
+ * accepted without any I/O; only a filter hit is confirmed against the table. Each instance
+ * rebuilds its filter from the table periodically, which also picks up the revocations made by
+ * other instances and drops expired ones.
+ */
+@Slf4j
+@Component
+public class TokenRevocationList {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final int expectedEntries;
+    private final double falsePositiveRate;
+
+    private volatile BloomFilter filter;
+    // Revocations of this instance since the current rebuild started
+    private volatile Set<String> revokedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    public TokenRevocationList(RevokedTokenRepository revokedTokenRepository,
+                               @Value("${jwt.revocation.expected-entries:10000}") int expectedEntries,
+                               @Value("${jwt.revocation.false-positive-rate:0.001}") double falsePositiveRate) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+    }
+
+    public boolean isRevoked(String tokenId) {
+        if (tokenId == null || !filter.mightContain(tokenId)) {
+            return false;
+        }
+        return revokedTokenRepository.existsByTokenIdAndExpiresAtAfter(tokenId, LocalDateTime.now());
+    }
+
+    /**
+     * Revokes the token until it expires. Takes effect on this instance immediately and on the
+     * others with their next rebuild.
+     */
+    public void revoke(String tokenId, Instant expiresAt) {
+        if (tokenId == null || !expiresAt.isAfter(Instant.now())) {
+            return;
+        }
+        revokedTokenRepository.save(new RevokedToken(tokenId, LocalDateTime.ofInstant(expiresAt, ZoneId.systemDefault())));
+        revokedDuringRebuild.add(tokenId);
+        filter.add(tokenId);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-ms:10000}")
+    public void rebuild() {
+        Set<String> revokedMeanwhile = ConcurrentHashMap.newKeySet();
+        revokedDuringRebuild = revokedMeanwhile;
+
+        List<String> tokenIds;
+        try {
+            tokenIds = revokedTokenRepository.findActiveTokenIds(LocalDateTime.now());
+        } catch (RuntimeException e) {
+            // Keep the current filter, it only lacks revocations of other instances
+            log.warn("Could not reload revoked tokens: {}", e.getMessage());
+            return;
+        }
+
+        BloomFilter next = new BloomFilter(Math.max(expectedEntries, tokenIds.size() * 2), falsePositiveRate);
+        tokenIds.forEach(next::add);
+        revokedMeanwhile.forEach(next::add);
+        filter = next;
+        // Revocations that went into the old filter while the new one was being built
+        revokedMeanwhile.forEach(next::add);
+    }
+}
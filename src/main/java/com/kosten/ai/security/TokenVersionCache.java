@@ -0,0 +1,80 @@
+package com.kosten.ai.security;
+
+import com.kosten.ai.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Current token version per user, used to reject tokens issued before a logout or password
+ * change. Versions are loaded on demand and kept for a short time; the instance that changes a
+ * version updates its entry once the change has committed, other instances pick it up when the
+ * entry expires.
+ */
+@Component
+public class TokenVersionCache {
+
+    // Users that no longer exist: every token is rejected
+    static final int UNKNOWN_USER = -1;
+
+    private final UserRepository userRepository;
+    private final Map<Long, Entry> versions = new ConcurrentHashMap<>();
+
+    @Value("${jwt.token-version.ttl-ms:60000}")
+    private long ttlMillis;
+
+    @Value("${jwt.token-version.max-users:50000}")
+    private int maxUsers;
+
+    public TokenVersionCache(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    public boolean isCurrent(Long userId, int tokenVersion) {
+        return currentVersion(userId) == tokenVersion;
+    }
+
+    public int currentVersion(Long userId) {
+        long now = System.currentTimeMillis();
+        Entry entry = versions.get(userId);
+        if (entry == null || now - entry.loadedAt() > ttlMillis) {
+            int version = userRepository.findTokenVersionById(userId).orElse(UNKNOWN_USER);
+            Entry loaded = new Entry(version, now);
+            if (versions.size() >= maxUsers) {
+                evictExpired();
+            }
+            if (versions.size() < maxUsers || versions.containsKey(userId)) {
+                // An update made after the read started wins over the version that was read
+                entry = versions.merge(userId, loaded,
+                        (current, fresh) -> current.loadedAt() >= fresh.loadedAt() ? current : fresh);
+            } else {
+                entry = loaded;
+            }
+        }
+        return entry.version();
+    }
+
+    public void update(Long userId, int version) {
+        versions.put(userId, new Entry(version, System.currentTimeMillis()));
+    }
+
+    /**
+     * Rejects all tokens of a deleted user. Unlike removing the entry, this cannot be undone by a
+     * concurrent request reloading the version before the delete has committed.
+     */
+    public void userDeleted(Long userId) {
+        update(userId, UNKNOWN_USER);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.token-version.ttl-ms:60000}")
+    public void evictExpired() {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        versions.values().removeIf(entry -> entry.loadedAt() < cutoff);
+    }
+
+    private record Entry(int version, long loadedAt) {
+    }
+}
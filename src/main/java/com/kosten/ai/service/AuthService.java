@@ -3,27 +3,27 @@ package com.kosten.ai.service;
 import com.kosten.ai.dto.LoginRequest;
 import com.kosten.ai.dto.RegisterRequest;
 import com.kosten.ai.dto.AuthResponse;
+import com.kosten.ai.dto.RefreshTokenRequest;
 import com.kosten.ai.entity.User;
 import com.kosten.ai.exception.InvalidRequestException;
-import com.kosten.ai.exception.ResourceNotFoundException;
 import com.kosten.ai.repository.UserRepository;
-import com.kosten.ai.security.JwtUtil;
+import com.kosten.ai.security.AuthenticatedUser;
+import com.kosten.ai.security.LoginThrottle;
+import com.kosten.ai.security.PasswordHasher;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
+
 @Service
 @RequiredArgsConstructor
 public class AuthService {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
-    private final JwtUtil jwtUtil;
-    private final CustomUserDetailsService userDetailsService;
-    private final AuthenticationManager authenticationManager;
+    private final PasswordHasher passwordHasher;
+    private final LoginThrottle loginThrottle;
+    private final RefreshTokenService refreshTokenService;
 
     public AuthResponse register(RegisterRequest request) {
         if (request.getUsername() == null || request.getUsername().trim().isEmpty()) {
@@ -49,27 +49,48 @@ public class AuthService {
         User user = new User();
         user.setUsername(request.getUsername().trim());
         user.setEmail(request.getEmail().trim());
-        user.setPassword(passwordEncoder.encode(request.getPassword()));
+        user.setPassword(passwordHasher.encode(request.getPassword()));
 
-        userRepository.save(user);
+        user = userRepository.save(user);
+        return refreshTokenService.issue(user);
+    }
 
-        UserDetails userDetails = userDetailsService.loadUserByUsername(user.getUsername());
-        String token = jwtUtil.generateToken(userDetails);
+    /**
+     * Checks the password on the hashing pool instead of the request thread. Failed attempts are
+     * counted per client IP and username; a password hashed with a lower cost than the configured
+     * one is rehashed on the first successful login.
+     */
+    public AuthResponse login(LoginRequest request, String clientIp) {
+        loginThrottle.checkAllowed(clientIp, request.getUsername());
 
-        return new AuthResponse(token, user.getUsername(), user.getEmail());
-    }
+        Optional<User> found = userRepository.findByUsername(request.getUsername());
+        if (found.isEmpty()) {
+            passwordHasher.matchesNothing(request.getPassword());
+            loginThrottle.loginFailed(clientIp, request.getUsername());
+            throw new BadCredentialsException("Invalid username or password");
+        }
 
-    public AuthResponse login(LoginRequest request) {
-        authenticationManager.authenticate(
-            new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword())
-        );
+        User user = found.get();
+        if (!passwordHasher.matches(request.getPassword(), user.getPassword())) {
+            loginThrottle.loginFailed(clientIp, request.getUsername());
+            throw new BadCredentialsException("Invalid username or password");
+        }
+        loginThrottle.loginSucceeded(request.getUsername());
 
-        UserDetails userDetails = userDetailsService.loadUserByUsername(request.getUsername());
-        String token = jwtUtil.generateToken(userDetails);
+        if (passwordHasher.needsRehash(user.getPassword())) {
+            // Conditional, so a password change committed since the user was read is not undone;
+            // in that case nothing is written
+            userRepository.updatePassword(user.getId(), user.getPassword(),
+                    passwordHasher.encode(request.getPassword()));
+        }
+        return refreshTokenService.issue(user);
+    }
 
-        User user = userRepository.findByUsername(request.getUsername())
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", request.getUsername()));
+    public AuthResponse refresh(RefreshTokenRequest request) {
+        return refreshTokenService.refresh(request.getRefreshToken());
+    }
 
-        return new AuthResponse(token, user.getUsername(), user.getEmail());
+    public void logout(RefreshTokenRequest request, AuthenticatedUser principal) {
+        refreshTokenService.logout(request.getRefreshToken(), principal);
     }
 }
@@ -0,0 +1,100 @@
+package com.kosten.ai.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BK-tree over 64-bit hashes with the Hamming distance as metric. A search only descends into
+ * children whose edge distance is within {@code maxDistance} of the query's distance to the
+ * node, which prunes most of the tree for small radii. Removed ids leave their node in place, the
+ * owner rebuilds the tree from the table when it is reloaded. Not thread-safe.
+ */
+final class BkTree {
+
+    record Match(long invoiceId, int distance) {
+    }
+
+    private Node root;
+
+    void add(long hash, long invoiceId) {
+        if (root == null) {
+            root = new Node(hash);
+            root.invoiceIds.add(invoiceId);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance == 0) {
+                if (!node.invoiceIds.contains(invoiceId)) {
+                    node.invoiceIds.add(invoiceId);
+                }
+                return;
+            }
+            Node child = node.children.get(distance);
+            if (child == null) {
+                child = new Node(hash);
+                child.invoiceIds.add(invoiceId);
+                node.children.put(distance, child);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    void remove(long hash, long invoiceId) {
+        Node node = root;
+        while (node != null) {
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance == 0) {
+                node.invoiceIds.remove(Long.valueOf(invoiceId));
+                return;
+            }
+            node = node.children.get(distance);
+        }
+    }
+
+    /**
+     * The closest invoice within {@code maxDistance}, the lowest id among equally close ones.
+     */
+    Match nearest(long hash, int maxDistance) {
+        Match best = null;
+        Deque<Node> pending = new ArrayDeque<>();
+        if (root != null) {
+            pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance <= maxDistance) {
+                for (long invoiceId : node.invoiceIds) {
+                    if (best == null || distance < best.distance()
+                            || (distance == best.distance() && invoiceId < best.invoiceId())) {
+                        best = new Match(invoiceId, distance);
+                    }
+                }
+            }
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                    pending.push(child.getValue());
+                }
+            }
+        }
+        return best;
+    }
+
+    private static final class Node {
+
+        private final long hash;
+        private final List<Long> invoiceIds = new ArrayList<>(1);
+        private final Map<Integer, Node> children = new HashMap<>(4);
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+    }
+}
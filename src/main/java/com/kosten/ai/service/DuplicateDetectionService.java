@@ -0,0 +1,151 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.entity.Invoice;
+import com.kosten.ai.exception.ConflictException;
+import com.kosten.ai.repository.InvoiceHash;
+import com.kosten.ai.repository.InvoiceRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flags likely duplicate uploads. Before extraction, the perceptual hash of an image is looked up
+ * in a per-user BK-tree of the hashes of all earlier invoices, so a second photo of the same
+ * receipt is rejected before it costs an AI call. After extraction, an invoice with the same
+ * vendor, invoice number and amount marks the new one as its duplicate. Trees are built lazily
+ * from the invoices table, kept up to date by the invoice write paths and evicted when idle.
+ */
+@Service
+@RequiredArgsConstructor
+public class DuplicateDetectionService {
+
+    // Placeholders of InvoiceService when the AI response could not be read
+    private static final Set<String> UNKNOWN_INVOICE_NUMBERS = Set.of("Unbekannt", "Parsing fehlgeschlagen");
+
+    private final InvoiceRepository invoiceRepository;
+
+    private final Map<Long, HashIndex> indexes = new ConcurrentHashMap<>();
+
+    @Value("${duplicates.max-distance:6}")
+    private int maxDistance;
+
+    @Value("${duplicates.max-users:1000}")
+    private int maxUsers;
+
+    @Value("${duplicates.idle-minutes:30}")
+    private long idleMinutes;
+
+    /**
+     * Rejects the upload with 409 if the user already has an invoice whose image is within
+     * {@code duplicates.max-distance} bits of the given hash.
+     */
+    public void checkNotSimilar(Long userId, Long perceptualHash) {
+        if (perceptualHash == null) {
+            return;
+        }
+        BkTree.Match match = indexFor(userId).nearest(perceptualHash, maxDistance);
+        if (match != null) {
+            throw new ConflictException("Invoice looks like a duplicate of invoice " + match.invoiceId()
+                    + "; upload again with allowDuplicate=true to keep it");
+        }
+    }
+
+    /**
+     * Oldest other invoice of the user with the same vendor, invoice number and amount. Runs in
+     * the caller's transaction before the invoice is saved.
+     */
+    public Long findDuplicateOf(Long userId, Invoice invoice) {
+        if (invoice.getInvoiceNumber() == null || UNKNOWN_INVOICE_NUMBERS.contains(invoice.getInvoiceNumber())
+                || invoice.getVendor() == null || invoice.getAmount() == null) {
+            return null;
+        }
+        return invoiceRepository.findDuplicateId(userId, invoice.getInvoiceNumber(), invoice.getVendor(),
+                invoice.getAmount());
+    }
+
+    public void invoiceAdded(Long userId, Invoice invoice) {
+        HashIndex index = indexes.get(userId);
+        if (index != null && invoice.getPerceptualHash() != null) {
+            index.add(invoice.getPerceptualHash(), invoice.getId());
+        }
+    }
+
+    public void invoiceRemoved(Long userId, Invoice invoice) {
+        HashIndex index = indexes.get(userId);
+        if (index != null && invoice.getPerceptualHash() != null) {
+            index.remove(invoice.getPerceptualHash(), invoice.getId());
+        }
+    }
+
+    /**
+     * Drops the user's index once the current transaction has committed, so a concurrent upload
+     * cannot reload hashes of invoices that are being deleted and report a duplicate of them.
+     */
+    public void invalidate(Long userId) {
+        AfterCommit.run(() -> indexes.remove(userId));
+    }
+
+    @Scheduled(fixedDelayString = "${duplicates.eviction-interval-ms:300000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMinutes * 60_000;
+        indexes.values().removeIf(index -> index.lastAccess < cutoff);
+    }
+
+    private HashIndex indexFor(Long userId) {
+        HashIndex index = indexes.get(userId);
+        if (index == null) {
+            if (indexes.size() >= maxUsers) {
+                evictLeastRecentlyUsed();
+            }
+            HashIndex loading = new HashIndex();
+            // Published before it is loaded, so invoices committed during the load are added by
+            // invoiceAdded; they wait for the monitor and the tree ignores ids it already has
+            synchronized (loading) {
+                index = indexes.putIfAbsent(userId, loading);
+                if (index == null) {
+                    try {
+                        for (InvoiceHash hash : invoiceRepository.findHashesByUserId(userId)) {
+                            loading.add(hash.getPerceptualHash(), hash.getId());
+                        }
+                    } catch (RuntimeException e) {
+                        indexes.remove(userId, loading);
+                        throw e;
+                    }
+                    index = loading;
+                }
+            }
+        }
+        index.lastAccess = System.currentTimeMillis();
+        return index;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        indexes.entrySet().stream()
+                .min(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                .ifPresent(entry -> indexes.remove(entry.getKey(), entry.getValue()));
+    }
+
+    private static final class HashIndex {
+
+        private final BkTree tree = new BkTree();
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        synchronized void add(long hash, long invoiceId) {
+            tree.add(hash, invoiceId);
+        }
+
+        synchronized void remove(long hash, long invoiceId) {
+            tree.remove(hash, invoiceId);
+        }
+
+        synchronized BkTree.Match nearest(long hash, int maxDistance) {
+            return tree.nearest(hash, maxDistance);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.dto.ExtractionJobResponse;
+import com.kosten.ai.entity.ExtractionJob;
+import com.kosten.ai.exception.FileProcessingException;
+import com.kosten.ai.exception.ResourceNotFoundException;
+import com.kosten.ai.repository.ExtractionJobRepository;
+import com.kosten.ai.repository.ProjectRepository;
+import com.kosten.ai.security.CurrentUser;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+/**
+ * Accepts uploads for asynchronous extraction. The file is stored with the job, so the upload
+ * survives a restart of the instance that received it; {@link ExtractionWorker} does the rest.
+ */
+@Service
+@RequiredArgsConstructor
+public class ExtractionJobService {
+
+    private final ExtractionJobRepository extractionJobRepository;
+    private final ProjectRepository projectRepository;
+    private final CurrentUser currentUser;
+    private final DuplicateDetectionService duplicateDetectionService;
+
+    @Value("${extraction.jobs.max-attempts:5}")
+    private int maxAttempts;
+
+    /**
+     * Queues the upload. Unless {@code allowDuplicate} is set, an image that looks like one of the
+     * user's earlier invoices is rejected right away.
+     */
+    @Transactional
+    public ExtractionJobResponse enqueue(MultipartFile file, Long projectId, boolean allowDuplicate) {
+        String contentType = InvoiceService.validateUpload(file);
+
+        Long userId = currentUser.id();
+        if (projectId != null && !projectRepository.existsByIdAndUserId(projectId, userId)) {
+            throw new ResourceNotFoundException("Project", projectId);
+        }
+
+        byte[] fileBytes;
+        try {
+            fileBytes = file.getBytes();
+        } catch (IOException e) {
+            throw new FileProcessingException("Error reading uploaded file: " + e.getMessage(), e);
+        }
+        if (!allowDuplicate) {
+            duplicateDetectionService.checkNotSimilar(userId, PerceptualHash.dHash(fileBytes));
+        }
+
+        ExtractionJob job = new ExtractionJob();
+        job.setUserId(userId);
+        job.setProjectId(projectId);
+        job.setFileName(file.getOriginalFilename());
+        job.setContentType(contentType);
+        job.setMaxAttempts(maxAttempts);
+        job.setFileData(fileBytes);
+
+        return convertToResponse(extractionJobRepository.save(job));
+    }
+
+    @Transactional(readOnly = true)
+    public ExtractionJobResponse getJob(Long id) {
+        ExtractionJob job = extractionJobRepository.findByIdAndUserId(id, currentUser.id())
+                .orElseThrow(() -> new ResourceNotFoundException("Extraction job", id));
+        return convertToResponse(job);
+    }
+
+    private ExtractionJobResponse convertToResponse(ExtractionJob job) {
+        ExtractionJobResponse response = new ExtractionJobResponse();
+        response.setId(job.getId());
+        response.setStatus(job.getStatus().name());
+        response.setProjectId(job.getProjectId());
+        response.setFileName(job.getFileName());
+        response.setAttempts(job.getAttempts());
+        response.setMaxAttempts(job.getMaxAttempts());
+        response.setNextAttemptAt(job.getNextAttemptAt());
+        response.setLastError(job.getLastError());
+        response.setInvoiceId(job.getInvoiceId());
+        response.setCreatedAt(job.getCreatedAt());
+        response.setUpdatedAt(job.getUpdatedAt());
+        return response;
+    }
+}
@@ -0,0 +1,215 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.entity.ExtractionJob;
+import com.kosten.ai.entity.Invoice;
+import com.kosten.ai.entity.Project;
+import com.kosten.ai.entity.User;
+import com.kosten.ai.repository.ExtractionJobRepository;
+import com.kosten.ai.repository.ProjectRepository;
+import com.kosten.ai.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs queued extractions. Every instance polls the job table and claims at most as many jobs
+ * as it has free slots, so the work spreads over all instances while each one stays within its
+ * own concurrency limit. A claimed job is leased; if the instance dies, the job becomes
+ * claimable again when the lease expires.
+ */
+@Slf4j
+@Service
+public class ExtractionWorker {
+
+    private static final long MAX_RETRY_DELAY_SECONDS = 3600;
+
+    private final ExtractionJobRepository extractionJobRepository;
+    private final UserRepository userRepository;
+    private final ProjectRepository projectRepository;
+    private final InvoiceService invoiceService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final String nodeId;
+    private final Semaphore slots;
+    private final ExecutorService executor;
+
+    // Cleared on shutdown, read by the worker threads
+    @Value("${extraction.worker.enabled:true}")
+    private volatile boolean enabled;
+
+    @Value("${extraction.worker.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${extraction.jobs.retry-base-seconds:30}")
+    private long retryBaseSeconds;
+
+    @Value("${extraction.jobs.retention-days:7}")
+    private int retentionDays;
+
+    public ExtractionWorker(ExtractionJobRepository extractionJobRepository,
+                            UserRepository userRepository,
+                            ProjectRepository projectRepository,
+                            InvoiceService invoiceService,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${extraction.worker.node-id:}") String nodeId,
+                            @Value("${extraction.worker.concurrency:4}") int concurrency) {
+        this.extractionJobRepository = extractionJobRepository;
+        this.userRepository = userRepository;
+        this.projectRepository = projectRepository;
+        this.invoiceService = invoiceService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+        this.slots = new Semaphore(concurrency);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "extraction-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${extraction.worker.poll-interval-ms:2000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        int free = slots.availablePermits();
+        if (free == 0) {
+            return;
+        }
+
+        List<Long> claimed = transactionTemplate.execute(status -> {
+            extractionJobRepository.markExpiredLeasesDead();
+            List<Long> ids = extractionJobRepository.lockClaimableIds(free);
+            if (!ids.isEmpty()) {
+                extractionJobRepository.markRunning(ids, nodeId, leaseSeconds);
+            }
+            return ids;
+        });
+
+        for (Long jobId : claimed) {
+            // Only this method takes slots, so the permits counted above are still free
+            slots.acquireUninterruptibly();
+            try {
+                executor.execute(() -> {
+                    try {
+                        process(jobId);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down, the claim is released in shutdown()
+                slots.release();
+            }
+        }
+    }
+
+    @Scheduled(cron = "${extraction.jobs.cleanup-cron:0 15 4 * * *}")
+    public void deleteFinishedJobs() {
+        Integer deleted = transactionTemplate.execute(status -> extractionJobRepository.deleteFinishedBefore(retentionDays));
+        if (deleted != null && deleted > 0) {
+            log.info("Deleted {} finished extraction jobs", deleted);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        enabled = false;
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        // Interrupted jobs are picked up by another instance right away instead of after the lease
+        Integer released = transactionTemplate.execute(status -> extractionJobRepository.releaseClaims(nodeId));
+        if (released != null && released > 0) {
+            log.info("Released {} extraction jobs of node {}", released, nodeId);
+        }
+    }
+
+    private void process(Long jobId) {
+        ExtractionJob job = readOnlyTransaction.execute(status -> extractionJobRepository.findById(jobId).orElse(null));
+        if (job == null || job.getFileData() == null) {
+            return;
+        }
+
+        try {
+            // No transaction and no connection held during the AI call
+            String aiResponse = invoiceService.extractInvoiceData(job.getFileData());
+
+            Invoice invoice = transactionTemplate.execute(status -> {
+                User user = userRepository.getReferenceById(job.getUserId());
+                Project project = job.getProjectId() != null
+                        ? projectRepository.findById(job.getProjectId()).orElse(null)
+                        : null;
+                Invoice saved = invoiceService.saveExtractedInvoice(user, project, job.getFileName(),
+                        job.getContentType(), job.getFileData(), PerceptualHash.dHash(job.getFileData()), aiResponse);
+                if (extractionJobRepository.markSucceeded(jobId, nodeId, saved.getId()) == 0) {
+                    // Lease lost to another node (or the job was deleted with its user), drop this result
+                    status.setRollbackOnly();
+                    return null;
+                }
+                return saved;
+            });
+
+            if (invoice != null) {
+                invoiceService.invoiceAdded(job.getUserId(), invoice);
+            } else {
+                log.warn("Extraction job {} was taken over by another node, discarding result", jobId);
+            }
+        } catch (Exception e) {
+            if (!enabled || Thread.currentThread().isInterrupted()) {
+                // Interrupted by shutdown(), which hands the claim back without counting the attempt
+                log.info("Extraction job {} interrupted by shutdown, leaving it to be released", jobId);
+                return;
+            }
+            fail(job, e);
+        }
+    }
+
+    private void fail(ExtractionJob job, Exception e) {
+        // The job was loaded after the claim, so attempts already counts this attempt
+        int attempt = job.getAttempts();
+        String error = truncate(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        if (attempt >= job.getMaxAttempts()) {
+            log.error("Extraction job {} failed permanently after {} attempts", job.getId(), attempt, e);
+            transactionTemplate.executeWithoutResult(status ->
+                    extractionJobRepository.markDead(job.getId(), nodeId, error));
+        } else {
+            long delay = Math.min(MAX_RETRY_DELAY_SECONDS, retryBaseSeconds << Math.min(attempt - 1, 20));
+            log.warn("Extraction job {} failed (attempt {}/{}), retrying in {} s: {}",
+                    job.getId(), attempt, job.getMaxAttempts(), delay, error);
+            transactionTemplate.executeWithoutResult(status ->
+                    extractionJobRepository.scheduleRetry(job.getId(), nodeId, delay, error));
+        }
+    }
+
+    private static String truncate(String message) {
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,213 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.exception.ConflictException;
+import com.kosten.ai.exception.FileProcessingException;
+import com.kosten.ai.exception.InvalidRequestException;
+import com.kosten.ai.security.CurrentUser;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Honors the {@code Idempotency-Key} header: the first request with a key runs, retries with the
+ * same key get its response instead of running again, and a retry that arrives while the first
+ * request is still in flight waits for it. Results are kept per (user, key) for
+ * {@code idempotency.ttl-ms} in a store of at most {@code idempotency.max-entries}. Failed
+ * requests are not kept, so they can be retried. The store is per instance.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final CurrentUser currentUser;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Value("${idempotency.ttl-ms:86400000}")
+    private long ttlMillis;
+
+    @Value("${idempotency.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${idempotency.wait-ms:60000}")
+    private long waitMillis;
+
+    public IdempotencyService(CurrentUser currentUser) {
+        this.currentUser = currentUser;
+    }
+
+    /**
+     * Runs the action once per key. Without a key the action simply runs.
+     *
+     * @param fingerprint identifies the request, see {@link #fingerprint}; reusing a key for a
+     *                    different request is rejected. Only computed when a key is present.
+     */
+    public <T> Outcome<T> execute(String idempotencyKey, Supplier<String> fingerprint, Supplier<T> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return new Outcome<>(action.get(), false);
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new InvalidRequestException(HEADER + " must not be longer than " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String key = currentUser.id() + ":" + idempotencyKey;
+        String requestFingerprint = fingerprint.get();
+        while (true) {
+            Entry entry = new Entry(requestFingerprint, System.currentTimeMillis());
+            if (entries.size() >= maxEntries) {
+                makeRoom();
+            }
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                return new Outcome<>(run(key, entry, action), false);
+            }
+            if (existing.isExpired(entry.createdAt, ttlMillis)) {
+                entries.remove(key, existing);
+                continue;
+            }
+            if (!existing.fingerprint.equals(requestFingerprint)) {
+                throw new InvalidRequestException(HEADER + " has already been used for a different request");
+            }
+            return new Outcome<>(await(existing), true);
+        }
+    }
+
+    /**
+     * Digest of the operation and its parameters; uploaded files are hashed by content.
+     */
+    public static String fingerprint(String operation, Object... parts) {
+        MessageDigest digest = sha256();
+        digest.update(operation.getBytes(StandardCharsets.UTF_8));
+        for (Object part : parts) {
+            digest.update((byte) 0);
+            if (part instanceof MultipartFile file) {
+                try (InputStream in = file.getInputStream()) {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                } catch (IOException e) {
+                    throw new FileProcessingException("Error reading uploaded file: " + e.getMessage(), e);
+                }
+            } else {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.eviction-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.isExpired(now, ttlMillis));
+    }
+
+    private <T> T run(String key, Entry entry, Supplier<T> action) {
+        try {
+            T value = action.get();
+            entry.result.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T await(Entry entry) {
+        try {
+            return (T) entry.result.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ConflictException("A request with this " + HEADER + " is still being processed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("A request with this " + HEADER + " is still being processed");
+        } catch (ExecutionException e) {
+            // The original request failed while this one waited for it
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void makeRoom() {
+        evictExpired();
+        // Still full: drop the oldest completed results, in-flight requests are always kept
+        int excess = entries.size() - maxEntries + 1;
+        if (excess > 0) {
+            entries.entrySet().stream()
+                    .filter(e -> e.getValue().result.isDone())
+                    .sorted(Comparator.comparingLong(e -> e.getValue().createdAt))
+                    .limit(excess)
+                    .toList()
+                    .forEach(e -> entries.remove(e.getKey(), e.getValue()));
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Result of {@link #execute}; {@code replayed} is set when it is the stored response of an
+     * earlier request.
+     */
+    public record Outcome<T>(T body, boolean replayed) {
+
+        public ResponseEntity<T> toResponseEntity() {
+            return toResponseEntity(HttpStatus.OK);
+        }
+
+        public ResponseEntity<T> toResponseEntity(HttpStatus status) {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(status);
+            if (replayed) {
+                builder.header(REPLAYED_HEADER, "true");
+            }
+            return builder.body(body);
+        }
+    }
+
+    private static final class Entry {
+
+        private final String fingerprint;
+        private final long createdAt;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Entry(String fingerprint, long createdAt) {
+            this.fingerprint = fingerprint;
+            this.createdAt = createdAt;
+        }
+
+        boolean isExpired(long now, long ttlMillis) {
+            return result.isDone() && now - createdAt > ttlMillis;
+        }
+    }
+}
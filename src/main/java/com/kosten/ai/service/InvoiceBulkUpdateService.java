@@ -0,0 +1,192 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.dto.BulkUpdateInvoicesRequest;
+import com.kosten.ai.dto.BulkUpdateResponse;
+import com.kosten.ai.entity.Invoice;
+import com.kosten.ai.entity.Project;
+import com.kosten.ai.exception.InvalidRequestException;
+import com.kosten.ai.exception.ResourceNotFoundException;
+import com.kosten.ai.repository.ProjectRepository;
+import com.kosten.ai.security.CurrentUser;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies one field change to many invoices with a single set-based UPDATE, scoped to the
+ * current user's invoices.
+ */
+@Service
+@RequiredArgsConstructor
+public class InvoiceBulkUpdateService {
+
+    static final int MAX_IDS = 10_000;
+
+    // Column lengths of invoices.vendor and invoices.description
+    private static final int MAX_VENDOR_LENGTH = 255;
+    private static final int MAX_DESCRIPTION_LENGTH = 1000;
+
+    private final CurrentUser currentUser;
+    private final ProjectRepository projectRepository;
+    private final ProjectTotalsService projectTotalsService;
+    private final VendorSuggestionService vendorSuggestionService;
+    private final SpendAnalyticsService spendAnalyticsService;
+    private final EntityManager entityManager;
+
+    @Transactional
+    public BulkUpdateResponse bulkUpdate(BulkUpdateInvoicesRequest request) {
+        boolean hasIds = request.getIds() != null && !request.getIds().isEmpty();
+        if (hasIds == (request.getFilter() != null)) {
+            throw new InvalidRequestException("Provide either ids or a filter");
+        }
+        if (hasIds && request.getIds().size() > MAX_IDS) {
+            throw new InvalidRequestException("At most " + MAX_IDS + " ids can be updated at once");
+        }
+        BulkUpdateInvoicesRequest.Filter filter = request.getFilter();
+        // An empty filter would select every invoice of the user
+        if (filter != null && filter.getVendor() == null && filter.getProjectId() == null
+                && filter.getStartDate() == null && filter.getEndDate() == null) {
+            throw new InvalidRequestException("Filter must contain at least one criterion");
+        }
+        if (filter != null && filter.getStartDate() != null && filter.getEndDate() != null
+                && filter.getStartDate().isAfter(filter.getEndDate())) {
+            throw new InvalidRequestException("Start date must be before or equal to end date");
+        }
+
+        BulkUpdateInvoicesRequest.Changes changes = request.getChanges();
+        if (changes == null) {
+            throw new InvalidRequestException("No changes given");
+        }
+        boolean moveToProject = changes.getProjectId() != null;
+        boolean removeFromProject = Boolean.TRUE.equals(changes.getRemoveFromProject());
+        if (moveToProject && removeFromProject) {
+            throw new InvalidRequestException("projectId and removeFromProject cannot be combined");
+        }
+        if (changes.getVendor() != null && changes.getVendor().isBlank()) {
+            throw new InvalidRequestException("Vendor cannot be empty");
+        }
+        if (changes.getVendor() != null && changes.getVendor().trim().length() > MAX_VENDOR_LENGTH) {
+            throw new InvalidRequestException("Vendor must not be longer than " + MAX_VENDOR_LENGTH + " characters");
+        }
+        if (changes.getDescription() != null && changes.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+            throw new InvalidRequestException("Description must not be longer than " + MAX_DESCRIPTION_LENGTH + " characters");
+        }
+        LocalDate invoiceDate = parseInvoiceDate(changes.getInvoiceDate());
+
+        Long userId = currentUser.id();
+
+        Project targetProject = null;
+        if (moveToProject) {
+            targetProject = projectRepository.findByIdAndUserId(changes.getProjectId(), userId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Project", changes.getProjectId()));
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Invoice> update = cb.createCriteriaUpdate(Invoice.class);
+        Root<Invoice> root = update.from(Invoice.class);
+        boolean anyChange = false;
+        if (moveToProject) {
+            update.set(root.<Project>get("project"), targetProject);
+            anyChange = true;
+        } else if (removeFromProject) {
+            update.set(root.<Project>get("project"), cb.nullLiteral(Project.class));
+            anyChange = true;
+        }
+        if (changes.getVendor() != null) {
+            update.set(root.<String>get("vendor"), changes.getVendor().trim());
+            anyChange = true;
+        }
+        if (invoiceDate != null) {
+            update.set(root.<LocalDate>get("invoiceDate"), invoiceDate);
+            anyChange = true;
+        }
+        if (changes.getDescription() != null) {
+            update.set(root.<String>get("description"), changes.getDescription());
+            anyChange = true;
+        }
+        if (!anyChange) {
+            throw new InvalidRequestException("No changes given");
+        }
+        update.where(scope(cb, root, userId, request));
+
+        // Projects losing invoices have to be known before the update moves them
+        Set<Long> affectedProjects = new HashSet<>();
+        if (moveToProject || removeFromProject) {
+            affectedProjects.addAll(sourceProjects(userId, request));
+            if (targetProject != null) {
+                affectedProjects.add(targetProject.getId());
+            }
+        }
+
+        int affected = entityManager.createQuery(update).executeUpdate();
+
+        if (affected > 0) {
+            projectTotalsService.recompute(affectedProjects);
+            if (changes.getVendor() != null) {
+                vendorSuggestionService.invalidate(userId);
+            }
+            spendAnalyticsService.invalidate(userId);
+        }
+        return new BulkUpdateResponse(affected);
+    }
+
+    private List<Long> sourceProjects(Long userId, BulkUpdateInvoicesRequest request) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Invoice> root = query.from(Invoice.class);
+        query.select(root.get("project").<Long>get("id")).distinct(true)
+                .where(cb.and(scope(cb, root, userId, request), cb.isNotNull(root.get("project"))));
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    private Predicate scope(CriteriaBuilder cb, Root<Invoice> root, Long userId, BulkUpdateInvoicesRequest request) {
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.equal(root.get("user").get("id"), userId));
+        if (request.getIds() != null && !request.getIds().isEmpty()) {
+            predicates.add(root.get("id").in(request.getIds()));
+        } else {
+            BulkUpdateInvoicesRequest.Filter filter = request.getFilter();
+            if (filter.getVendor() != null) {
+                predicates.add(cb.equal(root.get("vendor"), filter.getVendor()));
+            }
+            if (filter.getProjectId() != null) {
+                predicates.add(cb.equal(root.get("project").get("id"), filter.getProjectId()));
+            }
+            if (filter.getStartDate() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("invoiceDate"), filter.getStartDate()));
+            }
+            if (filter.getEndDate() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("invoiceDate"), filter.getEndDate()));
+            }
+        }
+        return cb.and(predicates.toArray(Predicate[]::new));
+    }
+
+    private LocalDate parseInvoiceDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            LocalDate date = LocalDate.parse(value);
+            if (date.isAfter(LocalDate.now())) {
+                throw new InvalidRequestException("Invoice date cannot be in the future");
+            }
+            return date;
+        } catch (DateTimeParseException e) {
+            throw new InvalidRequestException("Invalid date format. Use YYYY-MM-DD");
+        }
+    }
+}
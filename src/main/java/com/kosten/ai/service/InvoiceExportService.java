@@ -0,0 +1,167 @@
+package com.kosten.ai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kosten.ai.dto.InvoiceExportRow;
+import com.kosten.ai.exception.InvalidRequestException;
+import com.kosten.ai.exception.ResourceNotFoundException;
+import com.kosten.ai.repository.InvoiceRepository;
+import com.kosten.ai.repository.ProjectRepository;
+import com.kosten.ai.security.CurrentUser;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams invoice rows from a database cursor straight into the response, so memory use does
+ * not depend on the number of exported invoices.
+ */
+@Service
+public class InvoiceExportService {
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format from(String value) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            throw new InvalidRequestException("Unsupported export format: " + value + ". Use csv or ndjson");
+        }
+    }
+
+    static final String[] CSV_HEADER = {
+            "id", "projectId", "projectName", "invoiceNumber", "vendor", "amount",
+            "invoiceDate", "description", "uploadedAt", "fileName"
+    };
+
+    private final InvoiceRepository invoiceRepository;
+    private final CurrentUser currentUser;
+    private final ProjectRepository projectRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public InvoiceExportService(InvoiceRepository invoiceRepository,
+                                CurrentUser currentUser,
+                                ProjectRepository projectRepository,
+                                ObjectMapper objectMapper,
+                                PlatformTransactionManager transactionManager) {
+        this.invoiceRepository = invoiceRepository;
+        this.currentUser = currentUser;
+        this.projectRepository = projectRepository;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Validates the request on the calling thread and returns a body that streams the rows once
+     * the response is being written.
+     */
+    public StreamingResponseBody export(Format format, Long projectId, LocalDate startDate, LocalDate endDate) {
+        if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+            throw new InvalidRequestException("Start date must be before or equal to end date");
+        }
+        
+        Long userId = currentUser.id();
+
+        if (projectId != null) {
+            projectRepository.findByIdAndUserId(projectId, userId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Project", projectId));
+        }
+
+        return outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<InvoiceExportRow> rows = invoiceRepository.streamExportRows(userId, projectId, startDate, endDate)) {
+                    if (format == Format.CSV) {
+                        writeCsv(rows.iterator(), writer);
+                    } else {
+                        writeNdjson(rows.iterator(), writer);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+        };
+    }
+
+    void writeCsv(Iterator<InvoiceExportRow> rows, Writer writer) throws IOException {
+        writeCsvLine(writer, CSV_HEADER);
+        while (rows.hasNext()) {
+            writeCsvLine(writer, toCsvFields(rows.next()));
+        }
+    }
+
+    private void writeNdjson(Iterator<InvoiceExportRow> rows, Writer writer) throws IOException {
+        while (rows.hasNext()) {
+            writer.write(objectMapper.writeValueAsString(rows.next()));
+            writer.write('\n');
+        }
+    }
+
+    static String[] toCsvFields(InvoiceExportRow row) {
+        return new String[] {
+                String.valueOf(row.getId()),
+                row.getProjectId() != null ? row.getProjectId().toString() : "",
+                row.getProjectName(),
+                row.getInvoiceNumber(),
+                row.getVendor(),
+                row.getAmount() != null ? row.getAmount().toPlainString() : "",
+                row.getInvoiceDate() != null ? row.getInvoiceDate().toString() : "",
+                row.getDescription(),
+                row.getUploadedAt() != null ? row.getUploadedAt().toString() : "",
+                row.getFileName()
+        };
+    }
+
+    static void writeCsvLine(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escapeCsv(fields[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    private static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,353 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.dto.InvoiceImportResponse;
+import com.kosten.ai.entity.Invoice;
+import com.kosten.ai.entity.Project;
+import com.kosten.ai.entity.User;
+import com.kosten.ai.exception.FileProcessingException;
+import com.kosten.ai.exception.InvalidRequestException;
+import com.kosten.ai.exception.ResourceNotFoundException;
+import com.kosten.ai.repository.ProjectRepository;
+import com.kosten.ai.security.CurrentUser;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports historical invoices from a CSV upload. The file is read record by record and valid
+ * rows are inserted in JDBC batches, one transaction per batch, so a bad row never discards
+ * rows that were already imported. A batch the database rejects is retried row by row, so only
+ * the offending rows are reported as failed.
+ *
+ * <p>Expected header (case-insensitive, comma or semicolon separated):
+ * {@code invoiceNumber, vendor, amount[, invoiceDate][, description]}.
+ */
+@Slf4j
+@Service
+public class InvoiceImportService {
+
+    static final int BATCH_SIZE = 500;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    // invoices.amount is NUMERIC(38, 2)
+    private static final int MAX_AMOUNT_INTEGER_DIGITS = 36;
+    private static final int MAX_AMOUNT_SCALE = 2;
+
+    private final CurrentUser currentUser;
+    private final ProjectRepository projectRepository;
+    private final ProjectTotalsService projectTotalsService;
+    private final VendorSuggestionService vendorSuggestionService;
+    private final SpendAnalyticsService spendAnalyticsService;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    public InvoiceImportService(CurrentUser currentUser,
+                                ProjectRepository projectRepository,
+                                ProjectTotalsService projectTotalsService,
+                                VendorSuggestionService vendorSuggestionService,
+                                SpendAnalyticsService spendAnalyticsService,
+                                EntityManager entityManager,
+                                PlatformTransactionManager transactionManager) {
+        this.currentUser = currentUser;
+        this.projectRepository = projectRepository;
+        this.projectTotalsService = projectTotalsService;
+        this.vendorSuggestionService = vendorSuggestionService;
+        this.spendAnalyticsService = spendAnalyticsService;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public InvoiceImportResponse importCsv(MultipartFile file, Long projectId) {
+        if (file.isEmpty()) {
+            throw new InvalidRequestException("Uploaded file is empty");
+        }
+
+        Long userId = currentUser.id();
+
+        if (projectId != null) {
+            projectRepository.findByIdAndUserId(projectId, userId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Project", projectId));
+        }
+
+        ImportRun run = new ImportRun(userId, projectId);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            CsvRecordReader records = new CsvRecordReader(reader);
+            Map<String, Integer> columns = readHeader(records);
+
+            List<String> record;
+            while ((record = records.next()) != null) {
+                if (record.size() == 1 && record.get(0).isBlank()) {
+                    continue;
+                }
+                try {
+                    run.add(toInvoice(record, columns), records.getLine());
+                } catch (InvalidRequestException e) {
+                    run.fail(records.getLine(), e.getMessage());
+                }
+                if (run.pending.size() >= BATCH_SIZE) {
+                    run.flush();
+                }
+            }
+            run.flush();
+        } catch (IOException e) {
+            throw new FileProcessingException("Error reading CSV file: " + e.getMessage(), e);
+        } finally {
+            if (run.imported > 0) {
+                vendorSuggestionService.invalidate(userId);
+                spendAnalyticsService.invalidate(userId);
+            }
+        }
+
+        return new InvoiceImportResponse(run.imported, run.failed, run.errors);
+    }
+
+    private Map<String, Integer> readHeader(CsvRecordReader records) throws IOException {
+        List<String> header = records.next();
+        if (header == null) {
+            throw new InvalidRequestException("CSV file has no header row");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().replace("\uFEFF", "").toLowerCase(Locale.ROOT), i);
+        }
+        for (String required : List.of("invoicenumber", "vendor", "amount")) {
+            if (!columns.containsKey(required)) {
+                throw new InvalidRequestException("CSV header must contain the columns invoiceNumber, vendor and amount");
+            }
+        }
+        return columns;
+    }
+
+    private Invoice toInvoice(List<String> record, Map<String, Integer> columns) {
+        Invoice invoice = new Invoice();
+        invoice.setInvoiceNumber(required(record, columns, "invoicenumber", 255));
+        invoice.setVendor(required(record, columns, "vendor", 255));
+
+        String amount = required(record, columns, "amount", 64).replace(" ", "");
+        if (amount.indexOf(',') >= 0 && amount.indexOf('.') < 0) {
+            amount = amount.replace(',', '.');
+        }
+        try {
+            BigDecimal value = new BigDecimal(amount);
+            if (value.signum() < 0) {
+                throw new InvalidRequestException("Amount cannot be negative");
+            }
+            if (value.precision() - value.scale() > MAX_AMOUNT_INTEGER_DIGITS) {
+                throw new InvalidRequestException("Amount is too large: " + amount);
+            }
+            if (value.stripTrailingZeros().scale() > MAX_AMOUNT_SCALE) {
+                throw new InvalidRequestException("Amount must not have more than " + MAX_AMOUNT_SCALE
+                        + " decimal places");
+            }
+            invoice.setAmount(value);
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid amount: " + amount);
+        }
+
+        String date = optional(record, columns, "invoicedate");
+        if (date != null) {
+            try {
+                LocalDate invoiceDate = LocalDate.parse(date);
+                if (invoiceDate.isAfter(LocalDate.now())) {
+                    throw new InvalidRequestException("Invoice date cannot be in the future");
+                }
+                invoice.setInvoiceDate(invoiceDate);
+            } catch (DateTimeParseException e) {
+                throw new InvalidRequestException("Invalid date format. Use YYYY-MM-DD");
+            }
+        }
+
+        String description = optional(record, columns, "description");
+        if (description != null && description.length() > 1000) {
+            throw new InvalidRequestException("Description must not exceed 1000 characters");
+        }
+        invoice.setDescription(description);
+        return invoice;
+    }
+
+    private String required(List<String> record, Map<String, Integer> columns, String column, int maxLength) {
+        String value = optional(record, columns, column);
+        if (value == null) {
+            throw new InvalidRequestException("Missing value for " + column);
+        }
+        if (value.length() > maxLength) {
+            throw new InvalidRequestException("Value for " + column + " must not exceed " + maxLength + " characters");
+        }
+        return value;
+    }
+
+    private String optional(List<String> record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= record.size()) {
+            return null;
+        }
+        String value = record.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private final class ImportRun {
+
+        private final Long userId;
+        private final Long projectId;
+        private final List<Invoice> pending = new ArrayList<>(BATCH_SIZE);
+        private final List<Long> pendingLines = new ArrayList<>(BATCH_SIZE);
+        private final List<InvoiceImportResponse.RowError> errors = new ArrayList<>();
+        private int imported;
+        private int failed;
+
+        ImportRun(Long userId, Long projectId) {
+            this.userId = userId;
+            this.projectId = projectId;
+        }
+
+        void add(Invoice invoice, long line) {
+            pending.add(invoice);
+            pendingLines.add(line);
+        }
+
+        void fail(long line, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new InvoiceImportResponse.RowError(line, message));
+            }
+        }
+
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            try {
+                insert(pending);
+                imported += pending.size();
+            } catch (DataAccessException | PersistenceException e) {
+                // Find the offending rows: each row again in its own transaction
+                log.warn("Import batch of {} rows for user {} failed, retrying row by row: {}",
+                        pending.size(), userId, e.getMessage());
+                for (int i = 0; i < pending.size(); i++) {
+                    Invoice invoice = pending.get(i);
+                    // The id was assigned by the rolled back persist
+                    invoice.setId(null);
+                    try {
+                        insert(List.of(invoice));
+                        imported++;
+                    } catch (DataAccessException | PersistenceException rowError) {
+                        fail(pendingLines.get(i), "Row was rejected by the database");
+                    }
+                }
+            }
+            pending.clear();
+            pendingLines.clear();
+        }
+
+        private void insert(List<Invoice> invoices) {
+            transactionTemplate.executeWithoutResult(status -> {
+                User user = entityManager.getReference(User.class, userId);
+                Project project = projectId != null ? entityManager.getReference(Project.class, projectId) : null;
+                BigDecimal total = BigDecimal.ZERO;
+                LocalDateTime lastUploadedAt = null;
+                for (Invoice invoice : invoices) {
+                    invoice.setUser(user);
+                    invoice.setProject(project);
+                    entityManager.persist(invoice);
+                    total = total.add(invoice.getAmount());
+                    lastUploadedAt = invoice.getUploadedAt();
+                }
+                entityManager.flush();
+                entityManager.clear();
+                projectTotalsService.invoicesAdded(projectId, invoices.size(), total, lastUploadedAt);
+            });
+        }
+    }
+
+    /**
+     * Minimal RFC 4180 reader: quoted fields may contain separators, doubled quotes and line
+     * breaks. The separator (comma or semicolon) is taken from the header line.
+     */
+    static final class CsvRecordReader {
+
+        private final BufferedReader reader;
+        private Character separator;
+        private long line;
+
+        CsvRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        long getLine() {
+            return line;
+        }
+
+        List<String> next() throws IOException {
+            String text = reader.readLine();
+            if (text == null) {
+                return null;
+            }
+            line++;
+            if (separator == null) {
+                separator = text.indexOf(';') >= 0 && text.indexOf(',') < 0 ? ';' : ',';
+            }
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == text.length()) {
+                    if (!quoted) {
+                        break;
+                    }
+                    // Quoted field continues on the next line
+                    String continuation = reader.readLine();
+                    if (continuation == null) {
+                        break;
+                    }
+                    line++;
+                    field.append('\n');
+                    text = continuation;
+                    i = 0;
+                    continue;
+                }
+                char c = text.charAt(i++);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i < text.length() && text.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == separator) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
@@ -1,127 +1,253 @@
 package com.kosten.ai.service;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kosten.ai.dto.CursorPage;
 import com.kosten.ai.dto.InvoiceResponse;
 import com.kosten.ai.dto.UpdateInvoiceRequest;
 import com.kosten.ai.entity.Invoice;
 import com.kosten.ai.entity.Project;
 import com.kosten.ai.entity.User;
 import com.kosten.ai.exception.AiServiceException;
+import com.kosten.ai.exception.ConflictException;
 import com.kosten.ai.exception.FileProcessingException;
 import com.kosten.ai.exception.InvalidRequestException;
 import com.kosten.ai.exception.ResourceNotFoundException;
-import com.kosten.ai.exception.UnauthorizedException;
+import com.kosten.ai.exception.ServiceOverloadedException;
+import com.kosten.ai.repository.InvoiceFile;
 import com.kosten.ai.repository.InvoiceRepository;
+import com.kosten.ai.repository.InvoiceSearchHit;
 import com.kosten.ai.repository.ProjectRepository;
 import com.kosten.ai.repository.UserRepository;
-
-import lombok.RequiredArgsConstructor;
+import com.kosten.ai.security.CurrentUser;
 
 @Service
-@RequiredArgsConstructor
 public class InvoiceService {
 
     private final InvoiceRepository invoiceRepository;
     private final UserRepository userRepository;
     private final ProjectRepository projectRepository;
+    private final CurrentUser currentUser;
     private final GeminiAiService geminiAiService;
+    private final ProjectTotalsService projectTotalsService;
+    private final VendorSuggestionService vendorSuggestionService;
+    private final SpendAnalyticsService spendAnalyticsService;
+    private final DuplicateDetectionService duplicateDetectionService;
     private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public InvoiceService(InvoiceRepository invoiceRepository,
+                          UserRepository userRepository,
+                          ProjectRepository projectRepository,
+                          CurrentUser currentUser,
+                          GeminiAiService geminiAiService,
+                          ProjectTotalsService projectTotalsService,
+                          VendorSuggestionService vendorSuggestionService,
+                          SpendAnalyticsService spendAnalyticsService,
+                          DuplicateDetectionService duplicateDetectionService,
+                          ObjectMapper objectMapper,
+                          PlatformTransactionManager transactionManager) {
+        this.invoiceRepository = invoiceRepository;
+        this.userRepository = userRepository;
+        this.projectRepository = projectRepository;
+        this.currentUser = currentUser;
+        this.geminiAiService = geminiAiService;
+        this.projectTotalsService = projectTotalsService;
+        this.vendorSuggestionService = vendorSuggestionService;
+        this.spendAnalyticsService = spendAnalyticsService;
+        this.duplicateDetectionService = duplicateDetectionService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
 
-    public InvoiceResponse processInvoice(MultipartFile file, Long projectId) {
+    /**
+     * Runs the upload in three phases so that no database connection is held while Gemini is
+     * extracting: a read-only transaction for the user/project lookup, the AI call outside of any
+     * transaction, and a short write transaction for the insert and the derived counters. The
+     * admission deadline is checked right before the AI call. Unless {@code allowDuplicate} is
+     * set, an image that looks like one of the user's earlier invoices is rejected before
+     * extraction.
+     */
+    public InvoiceResponse processInvoice(MultipartFile file, Long projectId, boolean allowDuplicate,
+                                          UploadAdmissionService.Permit admission) {
+        String contentType = validateUpload(file);
+        byte[] fileBytes;
         try {
-            if (file.isEmpty()) {
-                throw new InvalidRequestException("Uploaded file is empty");
-            }
-            
-            String contentType = file.getContentType();
-            if (contentType == null || (!contentType.startsWith("image/") && !contentType.equals("application/pdf"))) {
-                throw new InvalidRequestException("File must be an image (JPEG, PNG) or PDF");
-            }
-            
-            String username = SecurityContextHolder.getContext().getAuthentication().getName();
-            User user = userRepository.findByUsername(username)
-                    .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
-            // Optional: Find and validate project
-            Project project = null;
-            if (projectId != null) {
-                project = projectRepository.findByIdAndUser(projectId, user)
-                        .orElseThrow(() -> new ResourceNotFoundException("Project", projectId));
-            }
+            fileBytes = file.getBytes();
+        } catch (IOException e) {
+            throw new FileProcessingException("Error reading uploaded file: " + e.getMessage(), e);
+        }
+        return processInvoice(file.getOriginalFilename(), contentType, fileBytes, projectId, allowDuplicate, admission);
+    }
 
-            // Convert image to base64
-            byte[] fileBytes = file.getBytes();
-            String base64Image = Base64.getEncoder().encodeToString(fileBytes);
+    /**
+     * Same as {@link #processInvoice(MultipartFile, Long, boolean, UploadAdmissionService.Permit)}
+     * for a file that has already been received and validated, e.g. a completed resumable upload.
+     */
+    public InvoiceResponse processInvoice(String fileName, String contentType, byte[] fileBytes, Long projectId,
+                                          boolean allowDuplicate, UploadAdmissionService.Permit admission) {
+        try {
+            Long userId = currentUser.id();
+            Long perceptualHash = PerceptualHash.dHash(fileBytes);
 
-            // Extract data using Gemini AI
-            String aiResponse = geminiAiService.extractInvoiceData(base64Image);
-            
-            if (aiResponse.startsWith("Fehler")) {
-                throw new AiServiceException("Failed to extract invoice data: " + aiResponse);
-            }
+            // Phase 1: lookups, connection is returned to the pool right after
+            UploadTarget target = readOnlyTransaction.execute(status -> {
+                if (!allowDuplicate) {
+                    duplicateDetectionService.checkNotSimilar(userId, perceptualHash);
+                }
+                User user = userRepository.getReferenceById(userId);
+                // Optional: Find and validate project
+                Project project = null;
+                if (projectId != null) {
+                    project = projectRepository.findByIdAndUserId(projectId, userId)
+                            .orElseThrow(() -> new ResourceNotFoundException("Project", projectId));
+                }
+                return new UploadTarget(user, project);
+            });
 
-            // Parse AI response
-            Invoice invoice = parseAiResponse(aiResponse);
-            invoice.setUser(user);
-            invoice.setProject(project);
-            invoice.setFileName(file.getOriginalFilename());
-            invoice.setAiExtractedData(aiResponse);
-            invoice.setImageData(fileBytes);
-            invoice.setContentType(file.getContentType());
+            // Phase 2: extract data using Gemini AI, no connection held
+            admission.checkDeadline();
+            String aiResponse = extractInvoiceData(fileBytes);
 
-            invoice = invoiceRepository.save(invoice);
+            // Phase 3: persist
+            Invoice saved = transactionTemplate.execute(status -> saveExtractedInvoice(target.user(), target.project(),
+                    fileName, contentType, fileBytes, perceptualHash, aiResponse));
+            invoiceAdded(userId, saved);
 
-            return convertToResponse(invoice);
+            return convertToResponse(saved);
 
-        } catch (ResourceNotFoundException | InvalidRequestException | AiServiceException e) {
+        } catch (ResourceNotFoundException | InvalidRequestException | ConflictException | AiServiceException
+                 | ServiceOverloadedException e) {
             throw e;
         } catch (Exception e) {
             throw new FileProcessingException("Error processing invoice file: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Checks an uploaded invoice file and returns its content type.
+     */
+    static String validateUpload(MultipartFile file) {
+        if (file.isEmpty()) {
+            throw new InvalidRequestException("Uploaded file is empty");
+        }
+        
+        return validateContentType(file.getContentType());
+    }
+
+    static String validateContentType(String contentType) {
+        if (contentType == null || (!contentType.startsWith("image/") && !contentType.equals("application/pdf"))) {
+            throw new InvalidRequestException("File must be an image (JPEG, PNG) or PDF");
+        }
+        return contentType;
+    }
+
+    public String extractInvoiceData(byte[] fileBytes) {
+        // Convert image to base64
+        String base64Image = Base64.getEncoder().encodeToString(fileBytes);
+        String aiResponse = geminiAiService.extractInvoiceData(base64Image);
+        
+        if (aiResponse.startsWith("Fehler")) {
+            throw new AiServiceException("Failed to extract invoice data: " + aiResponse);
+        }
+        return aiResponse;
+    }
+
+    /**
+     * Saves an invoice from the AI response and updates the project totals. Runs inside the
+     * caller's transaction, so the caller can commit further changes atomically with it.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Invoice saveExtractedInvoice(User user, Project project, String fileName, String contentType,
+                                        byte[] fileBytes, Long perceptualHash, String aiResponse) {
+        Invoice invoice = parseAiResponse(aiResponse);
+        invoice.setDuplicateOfId(duplicateDetectionService.findDuplicateOf(user.getId(), invoice));
+        invoice.setUser(user);
+        invoice.setProject(project);
+        invoice.setFileName(fileName);
+        invoice.setAiExtractedData(aiResponse);
+        invoice.setImageData(fileBytes);
+        invoice.setContentType(contentType);
+        invoice.setPerceptualHash(perceptualHash);
+
+        invoice = invoiceRepository.save(invoice);
+        projectTotalsService.invoiceAdded(project != null ? project.getId() : null,
+                invoice.getAmount(), invoice.getUploadedAt());
+        return invoice;
+    }
+
+    /**
+     * Updates the in-memory vendor and duplicate indexes and analytics after a new invoice has
+     * been committed.
+     */
+    public void invoiceAdded(Long userId, Invoice invoice) {
+        vendorSuggestionService.vendorAdded(userId, invoice.getVendor());
+        duplicateDetectionService.invoiceAdded(userId, invoice);
+        spendAnalyticsService.invalidate(userId);
+    }
+
+    @Transactional(readOnly = true)
     public Page<InvoiceResponse> getUserInvoices(int page, int size) {
         if (page < 0 || size <= 0) {
             throw new InvalidRequestException("Page must be >= 0 and size must be > 0");
         }
         
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
         Pageable pageable = PageRequest.of(page, size);
-        return invoiceRepository.findByUserOrderByUploadedAtDesc(user, pageable)
-                .map(this::convertToResponse);
+        return invoiceRepository.findResponsesByUserId(currentUser.id(), pageable);
     }
 
-    public List<InvoiceResponse> getProjectInvoices(Long projectId) {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
+    @Transactional(readOnly = true)
+    public CursorPage<InvoiceResponse> getUserInvoicesByCursor(String cursor, int size) {
+        if (size <= 0) {
+            throw new InvalidRequestException("Size must be > 0");
+        }
+        
+        Long userId = currentUser.id();
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<InvoiceResponse> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = invoiceRepository.findFirstResponsesByUserId(userId, limit);
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = invoiceRepository.findResponsesByUserIdAfter(userId, after.timestamp(), after.id(), limit);
+        }
+        return KeysetCursor.toPage(rows, size, invoice -> new KeysetCursor(invoice.getUploadedAt(), invoice.getId()));
+    }
 
-        Project project = projectRepository.findByIdAndUser(projectId, user)
-                .orElseThrow(() -> new ResourceNotFoundException("Project", projectId));
+    @Transactional(readOnly = true)
+    public List<InvoiceResponse> getProjectInvoices(Long projectId) {
+        Long userId = currentUser.id();
+        if (!projectRepository.existsByIdAndUserId(projectId, userId)) {
+            throw new ResourceNotFoundException("Project", projectId);
+        }
 
-        return invoiceRepository.findByProjectOrderByUploadedAtDesc(project)
-                .stream()
-                .map(this::convertToResponse)
-                .collect(Collectors.toList());
+        return invoiceRepository.findResponsesByProjectIdAndUserId(projectId, userId);
     }
 
+    @Transactional(readOnly = true)
     public Page<InvoiceResponse> searchInvoices(String invoiceNumber, String vendor, LocalDate startDate, LocalDate endDate, int page, int size) {
         if (page < 0 || size <= 0) {
             throw new InvalidRequestException("Page must be >= 0 and size must be > 0");
@@ -131,75 +257,78 @@ public class InvoiceService {
             throw new InvalidRequestException("Start date must be before or equal to end date");
         }
         
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
         Pageable pageable = PageRequest.of(page, size);
-        return invoiceRepository.searchInvoices(user, invoiceNumber, vendor, startDate, endDate, pageable)
-                .map(this::convertToResponse);
+        return invoiceRepository.searchInvoices(currentUser.id(), invoiceNumber, vendor, startDate, endDate, pageable);
     }
 
-    public InvoiceResponse getInvoiceById(Long id) {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
-        Invoice invoice = invoiceRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Invoice", id));
-
-        if (!invoice.getUser().getId().equals(user.getId())) {
-            throw new UnauthorizedException("You are not authorized to access this invoice");
+    @Transactional(readOnly = true)
+    public CursorPage<InvoiceResponse> searchInvoicesByCursor(String invoiceNumber, String vendor, LocalDate startDate, LocalDate endDate, String cursor, int size) {
+        if (size <= 0) {
+            throw new InvalidRequestException("Size must be > 0");
         }
-
-        return convertToResponse(invoice);
+        
+        if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+            throw new InvalidRequestException("Start date must be before or equal to end date");
+        }
+        
+        KeysetCursor after = cursor == null || cursor.isBlank() ? null : KeysetCursor.decode(cursor);
+        List<InvoiceResponse> rows = invoiceRepository.searchInvoicesAfter(currentUser.id(), invoiceNumber, vendor, startDate, endDate,
+                after != null ? after.timestamp() : null, after != null ? after.id() : null, PageRequest.of(0, size + 1));
+        return KeysetCursor.toPage(rows, size, invoice -> new KeysetCursor(invoice.getUploadedAt(), invoice.getId()));
     }
 
-    public byte[] getInvoiceImage(Long id) {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
-        Invoice invoice = invoiceRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Invoice", id));
-
-        if (!invoice.getUser().getId().equals(user.getId())) {
-            throw new UnauthorizedException("You are not authorized to access this invoice");
+    @Transactional(readOnly = true)
+    public Page<InvoiceResponse> searchInvoicesFullText(String query, int page, int size) {
+        if (page < 0 || size <= 0) {
+            throw new InvalidRequestException("Page must be >= 0 and size must be > 0");
         }
-
-        if (invoice.getImageData() == null) {
-            throw new ResourceNotFoundException("Invoice image data not found");
+        
+        if (query == null || query.trim().length() < 2) {
+            throw new InvalidRequestException("Search query must contain at least 2 characters");
         }
-
-        return invoice.getImageData();
+        
+        Page<InvoiceSearchHit> hits = invoiceRepository.searchFullText(currentUser.id(), query.trim(), PageRequest.of(page, size));
+        if (hits.isEmpty()) {
+            return new PageImpl<>(List.of(), hits.getPageable(), hits.getTotalElements());
+        }
+        
+        // Load the page's rows in one statement and restore the relevance order
+        Map<Long, InvoiceResponse> byId = invoiceRepository
+                .findResponsesByIdIn(hits.map(InvoiceSearchHit::getId).getContent())
+                .stream()
+                .collect(Collectors.toMap(InvoiceResponse::getId, Function.identity()));
+        return hits.map(hit -> byId.get(hit.getId()));
     }
 
-    public String getInvoiceContentType(Long id) {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
+    @Transactional(readOnly = true)
+    public InvoiceResponse getInvoiceById(Long id) {
+        return invoiceRepository.findResponseByIdAndUserId(id, currentUser.id())
+                .orElseThrow(() -> new ResourceNotFoundException("Invoice", id));
+    }
 
-        Invoice invoice = invoiceRepository.findById(id)
+    /**
+     * Image bytes and content type of an invoice in one query.
+     */
+    @Transactional(readOnly = true)
+    public InvoiceFile getInvoiceFile(Long id) {
+        InvoiceFile file = invoiceRepository.findFileByIdAndUserId(id, currentUser.id())
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice", id));
 
-        if (!invoice.getUser().getId().equals(user.getId())) {
-            throw new UnauthorizedException("You are not authorized to access this invoice");
+        if (file.getImageData() == null) {
+            throw new ResourceNotFoundException("Invoice image data not found");
         }
 
-        return invoice.getContentType();
+        return file;
     }
 
+    @Transactional
     public InvoiceResponse updateInvoice(Long id, UpdateInvoiceRequest request) {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
-        Invoice invoice = invoiceRepository.findById(id)
+        Long userId = currentUser.id();
+        Invoice invoice = invoiceRepository.findByIdAndUserId(id, userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice", id));
 
-        if (!invoice.getUser().getId().equals(user.getId())) {
-            throw new UnauthorizedException("You are not authorized to update this invoice");
-        }
+        BigDecimal oldAmount = invoice.getAmount();
+        String oldVendor = invoice.getVendor();
 
         // Update nur die Felder die gesetzt sind
         if (request.getInvoiceNumber() != null) {
@@ -230,22 +359,29 @@ public class InvoiceService {
         }
 
         invoice = invoiceRepository.save(invoice);
+        if (invoice.getProject() != null) {
+            Long projectId = invoice.getProject().getId();
+            projectTotalsService.invoiceChanged(projectId, oldAmount, projectId, invoice.getAmount(), invoice.getUploadedAt());
+        }
+        // The vendor index only follows writes that have actually committed
+        String newVendor = invoice.getVendor();
+        AfterCommit.run(() -> vendorSuggestionService.vendorChanged(userId, oldVendor, newVendor));
+        spendAnalyticsService.invalidate(userId);
         return convertToResponse(invoice);
     }
 
+    @Transactional
     public void deleteInvoice(Long id) {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
-        Invoice invoice = invoiceRepository.findById(id)
+        Long userId = currentUser.id();
+        Invoice invoice = invoiceRepository.findByIdAndUserId(id, userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice", id));
 
-        if (!invoice.getUser().getId().equals(user.getId())) {
-            throw new UnauthorizedException("You are not authorized to delete this invoice");
-        }
-
         invoiceRepository.delete(invoice);
+        projectTotalsService.invoiceRemoved(
+                invoice.getProject() != null ? invoice.getProject().getId() : null, invoice.getAmount());
+        AfterCommit.run(() -> vendorSuggestionService.vendorRemoved(userId, invoice.getVendor()));
+        AfterCommit.run(() -> duplicateDetectionService.invoiceRemoved(userId, invoice));
+        spendAnalyticsService.invalidate(userId);
     }
 
     private Invoice parseAiResponse(String aiResponse) {
@@ -319,6 +455,10 @@ public class InvoiceService {
         response.setDescription(invoice.getDescription());
         response.setUploadedAt(invoice.getUploadedAt());
         response.setFileName(invoice.getFileName());
+        response.setDuplicateOfId(invoice.getDuplicateOfId());
         return response;
     }
+
+    private record UploadTarget(User user, Project project) {
+    }
 }
@@ -0,0 +1,98 @@
+package com.kosten.ai.service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Difference hash (dHash) of an image: the image is reduced to 9x8 gray cells and each bit tells
+ * whether a cell is brighter than its right neighbour. Two photos of the same receipt differ in a
+ * few bits only, regardless of resolution, compression and moderate lighting changes.
+ */
+final class PerceptualHash {
+
+    private static final int COLUMNS = 9;
+    private static final int ROWS = 8;
+    // Images are decoded subsampled to about this size, the hash only needs 9x8 cells
+    private static final int DECODE_SIZE = 256;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Returns the hash, or {@code null} if the bytes are not an image ImageIO can decode (e.g. a
+     * PDF).
+     */
+    static Long dHash(byte[] imageBytes) {
+        BufferedImage image;
+        try {
+            image = decodeSubsampled(imageBytes);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        if (image == null || image.getWidth() < COLUMNS || image.getHeight() < ROWS) {
+            return null;
+        }
+
+        double[][] cells = grayCells(image);
+        long hash = 0;
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLUMNS - 1; x++) {
+                hash = (hash << 1) | (cells[y][x] > cells[y][x + 1] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static BufferedImage decodeSubsampled(byte[] imageBytes) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(imageBytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / DECODE_SIZE);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Average luminance per cell
+    private static double[][] grayCells(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[][] cells = new double[ROWS][COLUMNS];
+        for (int cy = 0; cy < ROWS; cy++) {
+            int y0 = cy * height / ROWS;
+            int y1 = (cy + 1) * height / ROWS;
+            for (int cx = 0; cx < COLUMNS; cx++) {
+                int x0 = cx * width / COLUMNS;
+                int x1 = (cx + 1) * width / COLUMNS;
+                double sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        int rgb = image.getRGB(x, y);
+                        sum += 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+                    }
+                }
+                cells[cy][cx] = sum / ((long) (x1 - x0) * (y1 - y0));
+            }
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,150 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.dto.InvoiceExportRow;
+import com.kosten.ai.entity.Project;
+import com.kosten.ai.exception.ResourceNotFoundException;
+import com.kosten.ai.repository.InvoiceRepository;
+import com.kosten.ai.repository.ProjectRepository;
+import com.kosten.ai.security.CurrentUser;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams a ZIP with the original files of all invoices of a project plus a CSV manifest.
+ * Invoice blobs are loaded one at a time while the archive is written to the response.
+ */
+@Service
+public class ProjectArchiveService {
+
+    static final String MANIFEST_NAME = "manifest.csv";
+
+    // Formats that are already compressed are stored as-is instead of being deflated again
+    private static final Set<String> COMPRESSED_CONTENT_TYPES = Set.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp", "image/heic", "image/heif", "application/pdf"
+    );
+
+    private final InvoiceRepository invoiceRepository;
+    private final ProjectRepository projectRepository;
+    private final CurrentUser currentUser;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public ProjectArchiveService(InvoiceRepository invoiceRepository,
+                                 ProjectRepository projectRepository,
+                                 CurrentUser currentUser,
+                                 PlatformTransactionManager transactionManager) {
+        this.invoiceRepository = invoiceRepository;
+        this.projectRepository = projectRepository;
+        this.currentUser = currentUser;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // Manifest and files are read by separate queries that have to see the same invoices
+        this.readOnlyTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    public StreamingResponseBody archive(Long projectId) {
+        Long userId = currentUser.id();
+
+        Project project = projectRepository.findByIdAndUserId(projectId, userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Project", projectId));
+
+        Long id = project.getId();
+        return outputStream -> {
+            ZipOutputStream zip = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try {
+                    Set<Long> withFile = new HashSet<>(invoiceRepository.findIdsWithFileByUserIdAndProjectId(userId, id));
+                    writeManifest(zip, userId, id, withFile);
+                    writeFiles(zip, userId, id, withFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            zip.finish();
+            zip.flush();
+        };
+    }
+
+    // Rows without a stored file get an empty archiveEntry
+    private void writeManifest(ZipOutputStream zip, Long userId, Long projectId, Set<Long> withFile) throws IOException {
+        zip.putNextEntry(new ZipEntry(MANIFEST_NAME));
+        Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+        String[] header = Arrays.copyOf(InvoiceExportService.CSV_HEADER, InvoiceExportService.CSV_HEADER.length + 1);
+        header[header.length - 1] = "archiveEntry";
+        InvoiceExportService.writeCsvLine(writer, header);
+
+        try (Stream<InvoiceExportRow> rows = invoiceRepository.streamExportRows(userId, projectId, null, null)) {
+            Iterator<InvoiceExportRow> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                InvoiceExportRow row = iterator.next();
+                String[] fields = InvoiceExportService.toCsvFields(row);
+                String[] line = Arrays.copyOf(fields, fields.length + 1);
+                line[line.length - 1] = withFile.contains(row.getId()) ? entryName(row) : "";
+                InvoiceExportService.writeCsvLine(writer, line);
+            }
+        }
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    private void writeFiles(ZipOutputStream zip, Long userId, Long projectId, Set<Long> withFile) throws IOException {
+        try (Stream<InvoiceExportRow> rows = invoiceRepository.streamExportRows(userId, projectId, null, null)) {
+            Iterator<InvoiceExportRow> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                InvoiceExportRow row = iterator.next();
+                if (!withFile.contains(row.getId())) {
+                    continue;
+                }
+                byte[] data = invoiceRepository.findImageDataById(row.getId());
+
+                ZipEntry entry = new ZipEntry(entryName(row));
+                if (row.getContentType() != null && COMPRESSED_CONTENT_TYPES.contains(row.getContentType())) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCompressedSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zip.putNextEntry(entry);
+                zip.write(data);
+                zip.closeEntry();
+            }
+        }
+    }
+
+    private String entryName(InvoiceExportRow row) {
+        String fileName = row.getFileName() != null && !row.getFileName().isBlank()
+                ? row.getFileName().replaceAll("[^A-Za-z0-9._-]", "_")
+                : "invoice" + extensionFor(row.getContentType());
+        return "files/" + row.getId() + "_" + fileName;
+    }
+
+    private String extensionFor(String contentType) {
+        if (contentType == null) {
+            return "";
+        }
+        return switch (contentType) {
+            case "image/jpeg" -> ".jpg";
+            case "image/png" -> ".png";
+            case "application/pdf" -> ".pdf";
+            default -> "";
+        };
+    }
+}
@@ -1,81 +1,92 @@
 package com.kosten.ai.service;
 
 import com.kosten.ai.dto.CreateProjectRequest;
+import com.kosten.ai.dto.CursorPage;
 import com.kosten.ai.dto.ProjectResponse;
 import com.kosten.ai.entity.Project;
-import com.kosten.ai.entity.User;
 import com.kosten.ai.exception.InvalidRequestException;
 import com.kosten.ai.exception.ResourceNotFoundException;
 import com.kosten.ai.exception.UnauthorizedException;
+import com.kosten.ai.repository.InvoiceRepository;
 import com.kosten.ai.repository.ProjectRepository;
-import com.kosten.ai.repository.UserRepository;
+import com.kosten.ai.security.CurrentUser;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ProjectService {
 
     private final ProjectRepository projectRepository;
-    private final UserRepository userRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final CurrentUser currentUser;
+    private final VendorSuggestionService vendorSuggestionService;
+    private final DuplicateDetectionService duplicateDetectionService;
+    private final SpendAnalyticsService spendAnalyticsService;
 
     public ProjectResponse createProject(CreateProjectRequest request) {
         if (request.getName() == null || request.getName().trim().isEmpty()) {
             throw new InvalidRequestException("Project name cannot be empty");
         }
         
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
         Project project = new Project();
         project.setName(request.getName().trim());
         project.setDescription(request.getDescription());
-        project.setUser(user);
+        project.setUser(currentUser.reference());
 
         project = projectRepository.save(project);
         return convertToResponse(project);
     }
 
+    @Transactional(readOnly = true)
     public Page<ProjectResponse> getUserProjects(int page, int size) {
         if (page < 0 || size <= 0) {
             throw new InvalidRequestException("Page must be >= 0 and size must be > 0");
         }
         
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
         Pageable pageable = PageRequest.of(page, size);
-        return projectRepository.findByUserOrderByCreatedAtDesc(user, pageable)
+        return projectRepository.findByUserIdOrderByCreatedAtDesc(currentUser.id(), pageable)
                 .map(this::convertToResponse);
     }
 
-    public ProjectResponse getProjectById(Long id) {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
+    @Transactional(readOnly = true)
+    public CursorPage<ProjectResponse> getUserProjectsByCursor(String cursor, int size) {
+        if (size <= 0) {
+            throw new InvalidRequestException("Size must be > 0");
+        }
+        
+        Long userId = currentUser.id();
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<Project> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = projectRepository.findByUserIdOrderByCreatedAtDescIdDesc(userId, limit);
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = projectRepository.findByUserIdAfter(userId, after.timestamp(), after.id(), limit);
+        }
+        CursorPage<Project> page = KeysetCursor.toPage(rows, size, project -> new KeysetCursor(project.getCreatedAt(), project.getId()));
+        return new CursorPage<>(page.getContent().stream().map(this::convertToResponse).toList(),
+                page.getSize(), page.isHasNext(), page.getNextCursor());
+    }
 
-        Project project = projectRepository.findByIdAndUser(id, user)
+    @Transactional(readOnly = true)
+    public ProjectResponse getProjectById(Long id) {
+        Project project = projectRepository.findByIdAndUserId(id, currentUser.id())
                 .orElseThrow(() -> new ResourceNotFoundException("Project", id));
 
         return convertToResponse(project);
     }
 
     public ProjectResponse updateProject(Long id, CreateProjectRequest request) {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
-        Project project = projectRepository.findByIdAndUser(id, user)
+        Long userId = currentUser.id();
+        Project project = projectRepository.findByIdAndUserId(id, userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Project", id));
 
         if (request.getName() != null) {
@@ -89,18 +100,23 @@ public class ProjectService {
         }
 
         project = projectRepository.save(project);
+        spendAnalyticsService.invalidate(userId);
         return convertToResponse(project);
     }
 
+    @Transactional
     public void deleteProject(Long id) {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
-
-        Project project = projectRepository.findByIdAndUser(id, user)
-                .orElseThrow(() -> new ResourceNotFoundException("Project", id));
+        Long userId = currentUser.id();
+        if (!projectRepository.existsByIdAndUserId(id, userId)) {
+            throw new ResourceNotFoundException("Project", id);
+        }
 
-        projectRepository.delete(project);
+        // Two set-based statements instead of loading and cascading every invoice
+        invoiceRepository.deleteAllByProjectId(id);
+        projectRepository.deleteProjectById(id);
+        vendorSuggestionService.invalidate(userId);
+        duplicateDetectionService.invalidate(userId);
+        spendAnalyticsService.invalidate(userId);
     }
 
     private ProjectResponse convertToResponse(Project project) {
@@ -109,16 +125,9 @@ public class ProjectService {
         response.setName(project.getName());
         response.setDescription(project.getDescription());
         response.setCreatedAt(project.getCreatedAt());
-        response.setInvoiceCount(project.getInvoices() != null ? project.getInvoices().size() : 0);
-        
-        // Calculate total cost
-        BigDecimal totalCost = BigDecimal.ZERO;
-        if (project.getInvoices() != null) {
-            totalCost = project.getInvoices().stream()
-                    .map(invoice -> invoice.getAmount() != null ? invoice.getAmount() : BigDecimal.ZERO)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-        }
-        response.setTotalCost(totalCost);
+        response.setInvoiceCount(project.getInvoiceCount() != null ? project.getInvoiceCount() : 0);
+        response.setTotalCost(project.getTotalCost() != null ? project.getTotalCost() : BigDecimal.ZERO);
+        response.setLastInvoiceAt(project.getLastInvoiceAt());
         
         return response;
     }
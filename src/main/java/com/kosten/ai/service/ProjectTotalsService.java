@@ -0,0 +1,103 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.repository.ProjectRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Maintains the denormalized invoice count, total cost and last upload time on {@code projects}.
+ * The incremental methods must run inside the transaction that writes the invoice. Existing
+ * projects were backfilled by the V2 migration. Contrary to the comment in V2, the repair of
+ * drifted totals does not run at startup but on a schedule, see {@link #repairDriftedTotals}.
+ */
+@Slf4j
+@Service
+public class ProjectTotalsService {
+
+    private final ProjectRepository projectRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public ProjectTotalsService(ProjectRepository projectRepository,
+                                PlatformTransactionManager transactionManager) {
+        this.projectRepository = projectRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void invoiceAdded(Long projectId, BigDecimal amount, LocalDateTime uploadedAt) {
+        if (projectId == null) {
+            return;
+        }
+        projectRepository.addInvoiceToTotals(projectId, nullToZero(amount), uploadedAt);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void invoicesAdded(Long projectId, int count, BigDecimal amount, LocalDateTime lastUploadedAt) {
+        if (projectId == null || count == 0) {
+            return;
+        }
+        projectRepository.addInvoicesToTotals(projectId, count, nullToZero(amount), lastUploadedAt);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void invoiceRemoved(Long projectId, BigDecimal amount) {
+        if (projectId == null) {
+            return;
+        }
+        projectRepository.removeInvoiceFromTotals(projectId, nullToZero(amount));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void invoiceChanged(Long oldProjectId, BigDecimal oldAmount,
+                               Long newProjectId, BigDecimal newAmount, LocalDateTime uploadedAt) {
+        if (oldProjectId != null && oldProjectId.equals(newProjectId)) {
+            BigDecimal delta = nullToZero(newAmount).subtract(nullToZero(oldAmount));
+            if (delta.signum() != 0) {
+                projectRepository.adjustTotalCost(oldProjectId, delta);
+            }
+            return;
+        }
+        invoiceRemoved(oldProjectId, oldAmount);
+        invoiceAdded(newProjectId, newAmount, uploadedAt);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recompute(Collection<Long> projectIds) {
+        if (!projectIds.isEmpty()) {
+            projectRepository.lockForUpdate(projectIds);
+            projectRepository.recomputeTotals(projectIds);
+        }
+    }
+
+    /**
+     * Finds projects whose totals differ from the invoices table and recomputes each of them in
+     * a short transaction that first locks the project row. Invoice writes take the same lock
+     * when they update the totals, so the recompute cannot miss a write that commits during it.
+     * Projects without drift are not written, so instances running this at the same time only
+     * repeat the check.
+     */
+    @Scheduled(cron = "${project.totals.repair-cron:0 30 3 * * *}")
+    public void repairDriftedTotals() {
+        List<Long> drifted = projectRepository.findIdsWithDriftedTotals();
+        for (Long projectId : drifted) {
+            transactionTemplate.executeWithoutResult(status -> recompute(List.of(projectId)));
+        }
+        if (!drifted.isEmpty()) {
+            log.warn("Repaired drifted invoice totals of {} projects", drifted.size());
+        }
+    }
+
+    private BigDecimal nullToZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
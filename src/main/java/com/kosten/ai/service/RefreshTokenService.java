@@ -0,0 +1,148 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.dto.AuthResponse;
+import com.kosten.ai.entity.RefreshToken;
+import com.kosten.ai.entity.User;
+import com.kosten.ai.exception.UnauthorizedException;
+import com.kosten.ai.repository.RefreshTokenRepository;
+import com.kosten.ai.repository.RevokedTokenRepository;
+import com.kosten.ai.repository.UserRepository;
+import com.kosten.ai.security.AuthenticatedUser;
+import com.kosten.ai.security.JwtUtil;
+import com.kosten.ai.security.TokenRevocationList;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Issues access/refresh token pairs and rotates refresh tokens. A refresh token can be used once;
+ * the refresh returns a new one of the same family. Presenting a token that was already rotated
+ * means it was copied, so the whole family is revoked and the session has to log in again.
+ */
+@Slf4j
+@Service
+public class RefreshTokenService {
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final UserRepository userRepository;
+    private final JwtUtil jwtUtil;
+    private final TokenRevocationList tokenRevocationList;
+    private final SecureRandom random = new SecureRandom();
+
+    @Value("${jwt.refresh.expiration-ms:2592000000}")
+    private long refreshExpirationMillis;
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                               RevokedTokenRepository revokedTokenRepository,
+                               UserRepository userRepository,
+                               JwtUtil jwtUtil,
+                               TokenRevocationList tokenRevocationList) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.userRepository = userRepository;
+        this.jwtUtil = jwtUtil;
+        this.tokenRevocationList = tokenRevocationList;
+    }
+
+    /**
+     * Issues a token pair that starts a new refresh token family, e.g. after a login.
+     */
+    @Transactional
+    public AuthResponse issue(User user) {
+        return issue(user, UUID.randomUUID().toString());
+    }
+
+    // Failed refreshes are committed, so that revoking a family on reuse is not rolled back
+    @Transactional(noRollbackFor = UnauthorizedException.class)
+    public AuthResponse refresh(String refreshToken) {
+        RefreshToken stored = refreshTokenRepository.findByTokenHashForUpdate(hash(refreshToken))
+                .orElseThrow(() -> new UnauthorizedException("Invalid refresh token"));
+        LocalDateTime now = LocalDateTime.now();
+
+        if (stored.getRevokedAt() != null) {
+            throw new UnauthorizedException("Refresh token has been revoked");
+        }
+        if (stored.getUsedAt() != null) {
+            log.warn("Refresh token of family {} was used twice, revoking the family", stored.getFamilyId());
+            refreshTokenRepository.revokeFamily(stored.getFamilyId(), now);
+            throw new UnauthorizedException("Refresh token has already been used");
+        }
+        if (stored.getExpiresAt().isBefore(now)) {
+            throw new UnauthorizedException("Refresh token has expired");
+        }
+
+        User user = userRepository.findById(stored.getUserId())
+                .orElseThrow(() -> new UnauthorizedException("Invalid refresh token"));
+        // Logout on all devices or a password change since the token was issued
+        if (!user.getTokenVersion().equals(stored.getTokenVersion())) {
+            refreshTokenRepository.revokeFamily(stored.getFamilyId(), now);
+            throw new UnauthorizedException("Refresh token has been revoked");
+        }
+
+        stored.setUsedAt(now);
+        return issue(user, stored.getFamilyId());
+    }
+
+    /**
+     * Ends one session: revokes the refresh token family and, if given, the access token of the
+     * request.
+     */
+    @Transactional
+    public void logout(String refreshToken, AuthenticatedUser principal) {
+        refreshTokenRepository.findByTokenHashForUpdate(hash(refreshToken))
+                .ifPresent(stored -> refreshTokenRepository.revokeFamily(stored.getFamilyId(), LocalDateTime.now()));
+        if (principal != null) {
+            tokenRevocationList.revoke(principal.tokenId(), principal.tokenExpiresAt());
+        }
+    }
+
+    @Scheduled(cron = "${jwt.refresh.cleanup-cron:0 45 4 * * *}")
+    @Transactional
+    public void deleteExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        int refreshTokens = refreshTokenRepository.deleteExpired(now);
+        int revokedTokens = revokedTokenRepository.deleteExpired(now);
+        if (refreshTokens > 0 || revokedTokens > 0) {
+            log.info("Deleted {} expired refresh tokens and {} expired revocations", refreshTokens, revokedTokens);
+        }
+    }
+
+    private AuthResponse issue(User user, String familyId) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        RefreshToken stored = new RefreshToken();
+        stored.setUserId(user.getId());
+        stored.setFamilyId(familyId);
+        stored.setTokenHash(hash(refreshToken));
+        stored.setTokenVersion(user.getTokenVersion());
+        stored.setExpiresAt(LocalDateTime.now().plus(Duration.ofMillis(refreshExpirationMillis)));
+        refreshTokenRepository.save(stored);
+
+        return new AuthResponse(jwtUtil.generateToken(user), user.getUsername(), user.getEmail(),
+                refreshToken, jwtUtil.getExpiration() / 1000);
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
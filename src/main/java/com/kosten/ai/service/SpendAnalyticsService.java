@@ -0,0 +1,311 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.dto.SpendAnalyticsResponse;
+import com.kosten.ai.dto.SpendBucket;
+import com.kosten.ai.exception.InvalidRequestException;
+import com.kosten.ai.repository.InvoiceRepository;
+import com.kosten.ai.repository.SpendRow;
+import com.kosten.ai.security.CurrentUser;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Spend totals grouped by month, vendor or project. Aggregations run over a per-user columnar
+ * snapshot (amount in cents, invoice date as epoch day, dictionary-encoded vendor and project)
+ * that is built with one projection query and dropped on every invoice write of that user.
+ */
+@Service
+public class SpendAnalyticsService {
+
+    public enum GroupBy {
+        MONTH, VENDOR, PROJECT;
+
+        public static GroupBy from(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new InvalidRequestException("groupBy must be one of month, vendor, project");
+            }
+        }
+    }
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final String NONE_KEY = "none";
+
+    private final InvoiceRepository invoiceRepository;
+    private final CurrentUser currentUser;
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final Map<Long, SpendSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Value("${analytics.cache.max-users:500}")
+    private int maxUsers;
+
+    @Value("${analytics.cache.idle-minutes:30}")
+    private long idleMinutes;
+
+    public SpendAnalyticsService(InvoiceRepository invoiceRepository,
+                                 CurrentUser currentUser,
+                                 PlatformTransactionManager transactionManager) {
+        this.invoiceRepository = invoiceRepository;
+        this.currentUser = currentUser;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public SpendAnalyticsResponse getSpend(GroupBy groupBy, LocalDate startDate, LocalDate endDate, Integer top) {
+        if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+            throw new InvalidRequestException("Start date must be before or equal to end date");
+        }
+        if (top != null && top <= 0) {
+            throw new InvalidRequestException("top must be > 0");
+        }
+
+        Long userId = currentUser.id();
+
+        SpendSnapshot snapshot = snapshotFor(userId);
+        List<SpendBucket> buckets = switch (groupBy) {
+            case MONTH -> snapshot.byMonth(startDate, endDate);
+            case VENDOR -> snapshot.byVendor(startDate, endDate);
+            case PROJECT -> snapshot.byProject(startDate, endDate);
+        };
+
+        long count = 0;
+        BigDecimal total = BigDecimal.ZERO;
+        for (SpendBucket bucket : buckets) {
+            count += bucket.getInvoiceCount();
+            total = total.add(bucket.getTotal());
+        }
+        if (top != null && buckets.size() > top) {
+            buckets = buckets.subList(0, top);
+        }
+        return new SpendAnalyticsResponse(groupBy.name().toLowerCase(Locale.ROOT), startDate, endDate,
+                count, total, buckets);
+    }
+
+    /**
+     * Drops the user's snapshot once the current transaction has committed. Bumping the
+     * generation only after the new rows are visible keeps a snapshot that was loaded from the old
+     * rows in the meantime from being cached.
+     */
+    public void invalidate(Long userId) {
+        AfterCommit.run(() -> {
+            invalidations.incrementAndGet();
+            snapshots.remove(userId);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.cache.eviction-interval-ms:300000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMinutes * 60_000;
+        snapshots.values().removeIf(snapshot -> snapshot.lastAccess < cutoff);
+    }
+
+    private SpendSnapshot snapshotFor(Long userId) {
+        SpendSnapshot snapshot = snapshots.get(userId);
+        if (snapshot == null) {
+            long generation = invalidations.get();
+            snapshot = readOnlyTransaction.execute(status -> {
+                try (Stream<SpendRow> rows = invoiceRepository.streamSpendRows(userId)) {
+                    return SpendSnapshot.build(rows);
+                }
+            });
+            // Only cache when no invoice write happened while the snapshot was loading
+            if (invalidations.get() == generation) {
+                if (snapshots.size() >= maxUsers) {
+                    snapshots.entrySet().stream()
+                            .min(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                            .ifPresent(entry -> snapshots.remove(entry.getKey(), entry.getValue()));
+                }
+                snapshots.put(userId, snapshot);
+            }
+        }
+        snapshot.lastAccess = System.currentTimeMillis();
+        return snapshot;
+    }
+
+    static final class SpendSnapshot {
+
+        private final int size;
+        private final long[] amountCents;
+        private final int[] epochDays;
+        private final int[] vendorIds;
+        private final int[] projectIndexes;
+        private final String[] vendorNames;
+        private final long[] projectIds;
+        private final String[] projectNames;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private SpendSnapshot(int size, long[] amountCents, int[] epochDays, int[] vendorIds, int[] projectIndexes,
+                              String[] vendorNames, long[] projectIds, String[] projectNames) {
+            this.size = size;
+            this.amountCents = amountCents;
+            this.epochDays = epochDays;
+            this.vendorIds = vendorIds;
+            this.projectIndexes = projectIndexes;
+            this.vendorNames = vendorNames;
+            this.projectIds = projectIds;
+            this.projectNames = projectNames;
+        }
+
+        static SpendSnapshot build(Stream<SpendRow> rows) {
+            int capacity = 256;
+            long[] amounts = new long[capacity];
+            int[] days = new int[capacity];
+            int[] vendors = new int[capacity];
+            int[] projects = new int[capacity];
+            Map<String, Integer> vendorDictionary = new HashMap<>();
+            List<String> vendorNames = new ArrayList<>();
+            Map<Long, Integer> projectDictionary = new HashMap<>();
+            List<Long> projectIds = new ArrayList<>();
+            List<String> projectNames = new ArrayList<>();
+
+            int size = 0;
+            for (SpendRow row : (Iterable<SpendRow>) rows::iterator) {
+                if (size == capacity) {
+                    capacity *= 2;
+                    amounts = Arrays.copyOf(amounts, capacity);
+                    days = Arrays.copyOf(days, capacity);
+                    vendors = Arrays.copyOf(vendors, capacity);
+                    projects = Arrays.copyOf(projects, capacity);
+                }
+                amounts[size] = row.getAmount() != null
+                        ? row.getAmount().setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue()
+                        : 0L;
+                days[size] = row.getInvoiceDate() != null ? (int) row.getInvoiceDate().toEpochDay() : NO_DATE;
+                vendors[size] = vendorDictionary.computeIfAbsent(row.getVendor(), vendor -> {
+                    vendorNames.add(vendor);
+                    return vendorNames.size() - 1;
+                });
+                if (row.getProjectId() != null) {
+                    projects[size] = projectDictionary.computeIfAbsent(row.getProjectId(), projectId -> {
+                        projectIds.add(projectId);
+                        projectNames.add(row.getProjectName());
+                        return projectIds.size() - 1;
+                    });
+                } else {
+                    projects[size] = -1;
+                }
+                size++;
+            }
+
+            return new SpendSnapshot(size, amounts, days, vendors, projects,
+                    vendorNames.toArray(String[]::new),
+                    projectIds.stream().mapToLong(Long::longValue).toArray(),
+                    projectNames.toArray(String[]::new));
+        }
+
+        List<SpendBucket> byMonth(LocalDate startDate, LocalDate endDate) {
+            int from = startDate != null ? (int) startDate.toEpochDay() : Integer.MIN_VALUE;
+            int to = endDate != null ? (int) endDate.toEpochDay() : Integer.MAX_VALUE;
+            boolean filtered = startDate != null || endDate != null;
+
+            // yyyyMM -> {count, cents}; invoices without a date are grouped under "none"
+            TreeMap<Integer, long[]> months = new TreeMap<>();
+            for (int i = 0; i < size; i++) {
+                int day = epochDays[i];
+                if (day == NO_DATE) {
+                    if (filtered) {
+                        continue;
+                    }
+                } else if (day < from || day > to) {
+                    continue;
+                }
+                int month = day == NO_DATE ? Integer.MAX_VALUE : toMonthKey(day);
+                long[] totals = months.computeIfAbsent(month, key -> new long[2]);
+                totals[0]++;
+                totals[1] += amountCents[i];
+            }
+
+            List<SpendBucket> buckets = new ArrayList<>(months.size());
+            for (Map.Entry<Integer, long[]> entry : months.entrySet()) {
+                String key = entry.getKey() == Integer.MAX_VALUE
+                        ? NONE_KEY
+                        : YearMonth.of(entry.getKey() / 100, entry.getKey() % 100).toString();
+                buckets.add(new SpendBucket(key, key, entry.getValue()[0], BigDecimal.valueOf(entry.getValue()[1], 2)));
+            }
+            return buckets;
+        }
+
+        List<SpendBucket> byVendor(LocalDate startDate, LocalDate endDate) {
+            long[] counts = new long[vendorNames.length];
+            long[] cents = new long[vendorNames.length];
+            aggregate(vendorIds, 0, counts, cents, startDate, endDate);
+
+            List<SpendBucket> buckets = new ArrayList<>();
+            for (int v = 0; v < vendorNames.length; v++) {
+                if (counts[v] > 0) {
+                    buckets.add(new SpendBucket(vendorNames[v], vendorNames[v], counts[v], BigDecimal.valueOf(cents[v], 2)));
+                }
+            }
+            buckets.sort(Comparator.comparing(SpendBucket::getTotal).reversed());
+            return buckets;
+        }
+
+        List<SpendBucket> byProject(LocalDate startDate, LocalDate endDate) {
+            // Slot 0 collects invoices without a project, slot p + 1 project p
+            long[] counts = new long[projectIds.length + 1];
+            long[] cents = new long[projectIds.length + 1];
+            aggregate(projectIndexes, 1, counts, cents, startDate, endDate);
+
+            List<SpendBucket> buckets = new ArrayList<>();
+            for (int p = 0; p < counts.length; p++) {
+                if (counts[p] == 0) {
+                    continue;
+                }
+                String key = p == 0 ? NONE_KEY : String.valueOf(projectIds[p - 1]);
+                String label = p == 0 ? null : projectNames[p - 1];
+                buckets.add(new SpendBucket(key, label, counts[p], BigDecimal.valueOf(cents[p], 2)));
+            }
+            buckets.sort(Comparator.comparing(SpendBucket::getTotal).reversed());
+            return buckets;
+        }
+
+        private void aggregate(int[] groups, int offset, long[] counts, long[] cents,
+                               LocalDate startDate, LocalDate endDate) {
+            if (startDate == null && endDate == null) {
+                for (int i = 0; i < size; i++) {
+                    int group = groups[i] + offset;
+                    counts[group]++;
+                    cents[group] += amountCents[i];
+                }
+                return;
+            }
+            int from = startDate != null ? (int) startDate.toEpochDay() : Integer.MIN_VALUE + 1;
+            int to = endDate != null ? (int) endDate.toEpochDay() : Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int day = epochDays[i];
+                if (day != NO_DATE && day >= from && day <= to) {
+                    int group = groups[i] + offset;
+                    counts[group]++;
+                    cents[group] += amountCents[i];
+                }
+            }
+        }
+
+        private static int toMonthKey(int epochDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            return date.getYear() * 100 + date.getMonthValue();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.exception.ServiceOverloadedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for synchronous uploads. At most {@code max-concurrent} uploads are
+ * processed at once and at most {@code max-queued} wait for a slot, each no longer than
+ * {@code max-queue-wait-ms}; everything beyond that is shed immediately with 503, so overload
+ * shows up at the client instead of as requests piling up in Tomcat. Every admitted upload gets
+ * a deadline that is checked again before the AI call.
+ */
+@Service
+public class UploadAdmissionService {
+
+    private final Semaphore slots;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int maxQueued;
+
+    @Value("${upload.admission.max-queue-wait-ms:5000}")
+    private long maxQueueWaitMillis;
+
+    @Value("${upload.admission.deadline-ms:60000}")
+    private long deadlineMillis;
+
+    @Value("${upload.admission.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    public UploadAdmissionService(@Value("${upload.admission.max-concurrent:8}") int maxConcurrent,
+                                  @Value("${upload.admission.max-queued:16}") int maxQueued) {
+        this.slots = new Semaphore(maxConcurrent, true);
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Waits for a processing slot or rejects the upload with 503. The deadline counts from here,
+     * including the time spent waiting.
+     */
+    public Permit admit() {
+        Instant admittedAt = Instant.now();
+        if (!slots.tryAcquire()) {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                throw overloaded("Too many uploads in progress, please retry later");
+            }
+            try {
+                if (!slots.tryAcquire(maxQueueWaitMillis, TimeUnit.MILLISECONDS)) {
+                    throw overloaded("Timed out waiting for an upload slot, please retry later");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw overloaded("Interrupted while waiting for an upload slot");
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+        return new Permit(admittedAt.plusMillis(deadlineMillis));
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getAvailableSlots() {
+        return slots.availablePermits();
+    }
+
+    private ServiceOverloadedException overloaded(String message) {
+        return new ServiceOverloadedException(message, retryAfterSeconds);
+    }
+
+    /**
+     * A processing slot, released on close.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final Instant deadline;
+        private boolean released;
+
+        private Permit(Instant deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * Fails with 503 if the deadline has passed, so no AI call is made for a response nobody
+         * waits for anymore.
+         */
+        public void checkDeadline() {
+            if (Instant.now().isAfter(deadline)) {
+                throw overloaded("Upload could not be processed in time, please retry later");
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                slots.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.dto.CreateUploadSessionRequest;
+import com.kosten.ai.dto.InvoiceResponse;
+import com.kosten.ai.dto.UploadSessionResponse;
+import com.kosten.ai.exception.ConflictException;
+import com.kosten.ai.exception.FileProcessingException;
+import com.kosten.ai.exception.InvalidRequestException;
+import com.kosten.ai.exception.ResourceNotFoundException;
+import com.kosten.ai.repository.ProjectRepository;
+import com.kosten.ai.security.CurrentUser;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resumable uploads for files above the multipart limit. A session is created with the file's
+ * size and SHA-256, the client then sends the file in chunks at increasing offsets and, after an
+ * interrupted chunk, asks for the received offset and continues from there. Chunks are streamed
+ * from the request into the session's file with {@link FileChannel#transferFrom}, so they are
+ * never buffered in the heap. Completing the session verifies the checksum and hands the file to
+ * {@link InvoiceService#processInvoice}. Sessions live in memory and on the local disk of the
+ * instance that created them.
+ */
+@Slf4j
+@Service
+public class UploadSessionService {
+
+    private static final String PART_SUFFIX = ".part";
+
+    private final InvoiceService invoiceService;
+    private final ProjectRepository projectRepository;
+    private final CurrentUser currentUser;
+    private final Path directory;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${upload.resumable.max-file-size-bytes:15728640}")
+    private long maxFileSize;
+
+    @Value("${upload.resumable.session-ttl-ms:86400000}")
+    private long sessionTtlMillis;
+
+    @Value("${upload.resumable.max-sessions-per-user:5}")
+    private int maxSessionsPerUser;
+
+    public UploadSessionService(InvoiceService invoiceService,
+                                ProjectRepository projectRepository,
+                                CurrentUser currentUser,
+                                @Value("${upload.resumable.directory:${java.io.tmpdir}/kosten-ai-uploads}") String directory) {
+        this.invoiceService = invoiceService;
+        this.projectRepository = projectRepository;
+        this.currentUser = currentUser;
+        this.directory = Paths.get(directory);
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        Files.createDirectories(directory);
+        // Sessions do not survive a restart, their files are orphaned
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*" + PART_SUFFIX)) {
+            for (Path file : leftovers) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public UploadSessionResponse create(CreateUploadSessionRequest request) {
+        InvoiceService.validateContentType(request.getContentType());
+        if (request.getTotalSize() > maxFileSize) {
+            throw new InvalidRequestException("File must not be larger than " + maxFileSize + " bytes");
+        }
+
+        Long userId = currentUser.id();
+        Long projectId = request.getProjectId();
+        if (projectId != null && !projectRepository.existsByIdAndUserId(projectId, userId)) {
+            throw new ResourceNotFoundException("Project", projectId);
+        }
+        long open = sessions.values().stream().filter(session -> session.userId.equals(userId)).count();
+        if (open >= maxSessionsPerUser) {
+            throw new ConflictException("Too many open upload sessions, complete or cancel one first");
+        }
+
+        String id = UUID.randomUUID().toString();
+        Path file = directory.resolve(id + PART_SUFFIX);
+        try {
+            Files.createFile(file);
+        } catch (IOException e) {
+            throw new FileProcessingException("Error creating upload session: " + e.getMessage(), e);
+        }
+
+        UploadSession session = new UploadSession(id, userId, projectId, request.getFileName(),
+                request.getContentType(), request.getTotalSize(), request.getSha256().toLowerCase(Locale.ROOT), file);
+        session.expiresAt = LocalDateTime.now().plus(Duration.ofMillis(sessionTtlMillis));
+        sessions.put(id, session);
+        return toResponse(session);
+    }
+
+    public UploadSessionResponse getSession(String id) {
+        return toResponse(sessionFor(id));
+    }
+
+    /**
+     * Appends a chunk. The offset must be the number of bytes received so far; if the connection
+     * breaks, everything that arrived before is kept and the client continues from there.
+     */
+    public UploadSessionResponse writeChunk(String id, long offset, InputStream body) {
+        UploadSession session = lock(id);
+        try {
+            if (offset != session.received) {
+                throw new ConflictException("Expected offset " + session.received + " but got " + offset);
+            }
+
+            long position = offset;
+            try (FileChannel channel = FileChannel.open(session.file, StandardOpenOption.WRITE);
+                 ReadableByteChannel source = Channels.newChannel(body)) {
+                try {
+                    while (position < session.totalSize) {
+                        long transferred = channel.transferFrom(source, position, session.totalSize - position);
+                        if (transferred <= 0) {
+                            break;
+                        }
+                        position += transferred;
+                    }
+                } finally {
+                    session.received = position;
+                }
+                if (position == session.totalSize && source.read(ByteBuffer.allocate(1)) > 0) {
+                    throw new InvalidRequestException("Chunk exceeds the declared total size of " + session.totalSize + " bytes");
+                }
+            } catch (IOException e) {
+                throw new FileProcessingException("Error writing upload chunk: " + e.getMessage(), e);
+            }
+
+            session.expiresAt = LocalDateTime.now().plus(Duration.ofMillis(sessionTtlMillis));
+            return toResponse(session);
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Verifies size and checksum and runs the extraction. The session is kept if the extraction
+     * fails, so it can be completed again without sending the file once more.
+     */
+    public InvoiceResponse complete(String id, boolean allowDuplicate, UploadAdmissionService.Permit admission) {
+        UploadSession session = lock(id);
+        try {
+            if (session.received != session.totalSize) {
+                throw new InvalidRequestException("Upload is incomplete: " + session.received + " of "
+                        + session.totalSize + " bytes received");
+            }
+
+            byte[] fileBytes;
+            try {
+                fileBytes = Files.readAllBytes(session.file);
+            } catch (IOException e) {
+                throw new FileProcessingException("Error reading uploaded file: " + e.getMessage(), e);
+            }
+            if (!sha256(fileBytes).equals(session.sha256)) {
+                discard(session);
+                throw new InvalidRequestException("Checksum does not match, the upload has been discarded");
+            }
+
+            InvoiceResponse response = invoiceService.processInvoice(session.fileName, session.contentType, fileBytes,
+                    session.projectId, allowDuplicate, admission);
+            discard(session);
+            return response;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    public void cancel(String id) {
+        UploadSession session = lock(id);
+        try {
+            discard(session);
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${upload.resumable.cleanup-interval-ms:600000}")
+    public void deleteExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        for (UploadSession session : sessions.values()) {
+            if (session.expiresAt.isBefore(now) && session.lock.tryLock()) {
+                try {
+                    discard(session);
+                } finally {
+                    session.lock.unlock();
+                }
+            }
+        }
+    }
+
+    private UploadSession sessionFor(String id) {
+        UploadSession session = sessions.get(id);
+        if (session == null || !session.userId.equals(currentUser.id())) {
+            throw new ResourceNotFoundException("Upload session", "id", id);
+        }
+        return session;
+    }
+
+    private UploadSession lock(String id) {
+        UploadSession session = sessionFor(id);
+        if (!session.lock.tryLock()) {
+            throw new ConflictException("Another request for this upload session is in progress");
+        }
+        // Completed, cancelled or expired while this request was waiting for the lock
+        if (sessions.get(id) != session) {
+            session.lock.unlock();
+            throw new ResourceNotFoundException("Upload session", "id", id);
+        }
+        return session;
+    }
+
+    private void discard(UploadSession session) {
+        sessions.remove(session.id, session);
+        try {
+            Files.deleteIfExists(session.file);
+        } catch (IOException e) {
+            log.warn("Could not delete upload file {}: {}", session.file, e.getMessage());
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static UploadSessionResponse toResponse(UploadSession session) {
+        return new UploadSessionResponse(session.id, session.projectId, session.fileName, session.totalSize,
+                session.received, session.expiresAt);
+    }
+
+    private static final class UploadSession {
+
+        private final String id;
+        private final Long userId;
+        private final Long projectId;
+        private final String fileName;
+        private final String contentType;
+        private final long totalSize;
+        private final String sha256;
+        private final Path file;
+        // Guards the file; requests for a session that is in use fail instead of waiting
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long received;
+        private volatile LocalDateTime expiresAt;
+
+        UploadSession(String id, Long userId, Long projectId, String fileName, String contentType,
+                      long totalSize, String sha256, Path file) {
+            this.id = id;
+            this.userId = userId;
+            this.projectId = projectId;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.totalSize = totalSize;
+            this.sha256 = sha256;
+            this.file = file;
+        }
+    }
+}
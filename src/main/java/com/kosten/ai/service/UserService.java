@@ -0,0 +1,115 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.dto.AuthResponse;
+import com.kosten.ai.dto.ChangePasswordRequest;
+import com.kosten.ai.exception.ConflictException;
+import com.kosten.ai.exception.InvalidRequestException;
+import com.kosten.ai.exception.ResourceNotFoundException;
+import com.kosten.ai.repository.InvoiceRepository;
+import com.kosten.ai.repository.ProjectRepository;
+import com.kosten.ai.repository.UserRepository;
+import com.kosten.ai.security.CurrentUser;
+import com.kosten.ai.security.PasswordHasher;
+import com.kosten.ai.security.TokenVersionCache;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Service
+public class UserService {
+
+    private final UserRepository userRepository;
+    private final ProjectRepository projectRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final VendorSuggestionService vendorSuggestionService;
+    private final DuplicateDetectionService duplicateDetectionService;
+    private final SpendAnalyticsService spendAnalyticsService;
+    private final CurrentUser currentUser;
+    private final TokenVersionCache tokenVersionCache;
+    private final PasswordHasher passwordHasher;
+    private final RefreshTokenService refreshTokenService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public UserService(UserRepository userRepository,
+                       ProjectRepository projectRepository,
+                       InvoiceRepository invoiceRepository,
+                       VendorSuggestionService vendorSuggestionService,
+                       DuplicateDetectionService duplicateDetectionService,
+                       SpendAnalyticsService spendAnalyticsService,
+                       CurrentUser currentUser,
+                       TokenVersionCache tokenVersionCache,
+                       PasswordHasher passwordHasher,
+                       RefreshTokenService refreshTokenService,
+                       PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.projectRepository = projectRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.vendorSuggestionService = vendorSuggestionService;
+        this.duplicateDetectionService = duplicateDetectionService;
+        this.spendAnalyticsService = spendAnalyticsService;
+        this.currentUser = currentUser;
+        this.tokenVersionCache = tokenVersionCache;
+        this.passwordHasher = passwordHasher;
+        this.refreshTokenService = refreshTokenService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Logs the current user out on all devices by revoking every token issued so far.
+     */
+    @Transactional
+    public void logout() {
+        revokeTokens(currentUser.id());
+    }
+
+    /**
+     * Changes the password, revokes all existing tokens and returns a fresh token for the caller.
+     * Both hashing steps run outside of any transaction, so the slow BCrypt work does not hold a
+     * connection or a row lock; the write fails with 409 if the password changed in between.
+     */
+    public AuthResponse changePassword(ChangePasswordRequest request) {
+        if (request.getNewPassword() == null || request.getNewPassword().length() < 6) {
+            throw new InvalidRequestException("Password must be at least 6 characters long");
+        }
+        
+        String currentHash = readOnlyTransaction.execute(status -> currentUser.load().getPassword());
+        if (!passwordHasher.matches(request.getCurrentPassword(), currentHash)) {
+            throw new InvalidRequestException("Current password is incorrect");
+        }
+        String newHash = passwordHasher.encode(request.getNewPassword());
+
+        return transactionTemplate.execute(status -> {
+            Long userId = currentUser.id();
+            if (userRepository.updatePassword(userId, currentHash, newHash) == 0) {
+                throw new ConflictException("Password has been changed by another request, please try again");
+            }
+            revokeTokens(userId);
+            return refreshTokenService.issue(currentUser.load());
+        });
+    }
+
+    @Transactional
+    public void deleteCurrentUser() {
+        Long userId = currentUser.id();
+        invoiceRepository.deleteAllByUserId(userId);
+        projectRepository.deleteAllByUserId(userId);
+        userRepository.deleteUserById(userId);
+        tokenVersionCache.userDeleted(userId);
+        vendorSuggestionService.invalidate(userId);
+        duplicateDetectionService.invalidate(userId);
+        spendAnalyticsService.invalidate(userId);
+    }
+
+    private int revokeTokens(Long userId) {
+        // Flushes pending changes of the user first
+        userRepository.incrementTokenVersion(userId);
+        int version = userRepository.findTokenVersionById(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("User", userId));
+        AfterCommit.run(() -> tokenVersionCache.update(userId, version));
+        return version;
+    }
+}
@@ -0,0 +1,158 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.dto.VendorSuggestion;
+import com.kosten.ai.exception.InvalidRequestException;
+import com.kosten.ai.repository.InvoiceRepository;
+import com.kosten.ai.repository.VendorCount;
+import com.kosten.ai.security.CurrentUser;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user vendor autocomplete. Each user's index is a sorted map keyed by the lower-cased
+ * vendor name, built lazily from the invoices table on first use and kept up to date by the
+ * invoice write paths. Indexes of inactive users are evicted.
+ */
+@Service
+@RequiredArgsConstructor
+public class VendorSuggestionService {
+
+    private final InvoiceRepository invoiceRepository;
+    private final CurrentUser currentUser;
+
+    private final Map<Long, VendorIndex> indexes = new ConcurrentHashMap<>();
+    // Bumped by every reported write, before it is applied to an index
+    private final AtomicLong changes = new AtomicLong();
+
+    @Value("${vendor.suggestions.max-users:1000}")
+    private int maxUsers;
+
+    @Value("${vendor.suggestions.idle-minutes:30}")
+    private long idleMinutes;
+
+    public List<VendorSuggestion> suggest(String prefix, int limit) {
+        if (limit <= 0) {
+            throw new InvalidRequestException("Limit must be > 0");
+        }
+        
+        Long userId = currentUser.id();
+
+        return indexFor(userId).suggest(prefix != null ? prefix.trim() : "", limit);
+    }
+
+    public void vendorAdded(Long userId, String vendor) {
+        changes.incrementAndGet();
+        VendorIndex index = indexes.get(userId);
+        if (index != null) {
+            index.add(vendor, 1);
+        }
+    }
+
+    public void vendorRemoved(Long userId, String vendor) {
+        changes.incrementAndGet();
+        VendorIndex index = indexes.get(userId);
+        if (index != null) {
+            index.add(vendor, -1);
+        }
+    }
+
+    public void vendorChanged(Long userId, String oldVendor, String newVendor) {
+        if (oldVendor != null && oldVendor.equals(newVendor)) {
+            return;
+        }
+        vendorRemoved(userId, oldVendor);
+        vendorAdded(userId, newVendor);
+    }
+
+    /**
+     * Drops the user's index once the current transaction has committed, so a concurrent
+     * suggestion cannot rebuild it from the rows the transaction is replacing.
+     */
+    public void invalidate(Long userId) {
+        AfterCommit.run(() -> {
+            changes.incrementAndGet();
+            indexes.remove(userId);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${vendor.suggestions.eviction-interval-ms:300000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMinutes * 60_000;
+        indexes.values().removeIf(index -> index.lastAccess < cutoff);
+    }
+
+    private VendorIndex indexFor(Long userId) {
+        VendorIndex index = indexes.get(userId);
+        if (index == null) {
+            long generation = changes.get();
+            VendorIndex loaded = new VendorIndex();
+            for (VendorCount count : invoiceRepository.countVendorsByUserId(userId)) {
+                loaded.add(count.getVendor(), count.getInvoiceCount().intValue());
+            }
+            index = loaded;
+            // Only cached when no write was reported while loading, otherwise the write would find
+            // no index and be missing from this one until eviction. A write reported just after
+            // the put is caught by the second check.
+            if (changes.get() == generation) {
+                if (indexes.size() >= maxUsers) {
+                    evictLeastRecentlyUsed();
+                }
+                VendorIndex existing = indexes.putIfAbsent(userId, loaded);
+                if (existing != null) {
+                    index = existing;
+                } else if (changes.get() != generation) {
+                    indexes.remove(userId, loaded);
+                }
+            }
+        }
+        index.lastAccess = System.currentTimeMillis();
+        return index;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        indexes.entrySet().stream()
+                .min(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                .ifPresent(entry -> indexes.remove(entry.getKey(), entry.getValue()));
+    }
+
+    private static final class VendorIndex {
+
+        // "lower-cased name \0 original name" -> invoice count; one entry per distinct spelling
+        private final NavigableMap<String, Integer> counts = new TreeMap<>();
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        synchronized void add(String vendor, int delta) {
+            if (vendor == null || vendor.isBlank()) {
+                return;
+            }
+            counts.compute(vendor.toLowerCase(Locale.ROOT) + '\0' + vendor, (key, current) -> {
+                int next = (current != null ? current : 0) + delta;
+                return next > 0 ? next : null;
+            });
+        }
+
+        synchronized List<VendorSuggestion> suggest(String prefix, int limit) {
+            String from = prefix.toLowerCase(Locale.ROOT);
+            List<VendorSuggestion> matches = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : counts.subMap(from, true, from + Character.MAX_VALUE, true).entrySet()) {
+                String key = entry.getKey();
+                matches.add(new VendorSuggestion(key.substring(key.indexOf('\0') + 1), entry.getValue()));
+            }
+            matches.sort(Comparator.comparingLong(VendorSuggestion::getInvoiceCount).reversed()
+                    .thenComparing(VendorSuggestion::getVendor));
+            return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+        }
+    }
+}
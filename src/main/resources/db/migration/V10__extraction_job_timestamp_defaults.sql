@@ -0,0 +1,5 @@
+-- Job timestamps come from the database clock like every later state transition, so the retry
+-- time of a new job and the lease checks of the workers are compared against the same clock
+ALTER TABLE extraction_jobs ALTER COLUMN next_attempt_at SET DEFAULT now();
+ALTER TABLE extraction_jobs ALTER COLUMN created_at SET DEFAULT now();
+ALTER TABLE extraction_jobs ALTER COLUMN updated_at SET DEFAULT now();
@@ -0,0 +1,34 @@
+-- Schema as it was created by spring.jpa.hibernate.ddl-auto=update before migrations were introduced.
+-- Existing databases are baselined at this version (spring.flyway.baseline-on-migrate), so every
+-- statement here only runs on empty databases.
+CREATE TABLE IF NOT EXISTS users (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username   VARCHAR(255) NOT NULL UNIQUE,
+    email      VARCHAR(255) NOT NULL UNIQUE,
+    password   VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS projects (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id     BIGINT       NOT NULL REFERENCES users (id),
+    name        VARCHAR(255) NOT NULL,
+    description VARCHAR(500),
+    created_at  TIMESTAMP(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS invoices (
+    id                BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id           BIGINT        NOT NULL REFERENCES users (id),
+    project_id        BIGINT REFERENCES projects (id),
+    invoice_number    VARCHAR(255)  NOT NULL,
+    vendor            VARCHAR(255)  NOT NULL,
+    amount            NUMERIC(38, 2) NOT NULL,
+    invoice_date      DATE,
+    description       VARCHAR(1000),
+    uploaded_at       TIMESTAMP(6)  NOT NULL,
+    file_name         VARCHAR(255),
+    ai_extracted_data VARCHAR(5000),
+    image_data        BYTEA,
+    content_type      VARCHAR(255)
+);
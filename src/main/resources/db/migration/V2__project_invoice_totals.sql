@@ -0,0 +1,20 @@
+-- Denormalized per-project totals, maintained by ProjectTotalsService. Rows are backfilled
+-- here; the startup repair job keeps correcting any drift afterwards.
+ALTER TABLE projects ADD COLUMN IF NOT EXISTS invoice_count INTEGER;
+ALTER TABLE projects ADD COLUMN IF NOT EXISTS total_cost NUMERIC(38, 2);
+ALTER TABLE projects ADD COLUMN IF NOT EXISTS last_invoice_at TIMESTAMP(6);
+
+UPDATE projects p
+SET invoice_count   = t.invoice_count,
+    total_cost      = t.total_cost,
+    last_invoice_at = t.last_invoice_at
+FROM (
+    SELECT pr.id,
+           COUNT(i.id)                      AS invoice_count,
+           COALESCE(SUM(i.amount), 0)       AS total_cost,
+           MAX(i.uploaded_at)               AS last_invoice_at
+    FROM projects pr
+    LEFT JOIN invoices i ON i.project_id = pr.id
+    GROUP BY pr.id
+) t
+WHERE t.id = p.id;
@@ -0,0 +1,11 @@
+-- Full-text and fuzzy search over invoice number, vendor and description
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_invoices_search_document ON invoices USING gin (
+    to_tsvector('simple', coalesce(invoice_number, '') || ' ' || coalesce(vendor, '') || ' ' || coalesce(description, ''))
+);
+
+-- Trigram indexes serve fuzzy matching as well as the LOWER(col) LIKE '%x%' filters of /search
+CREATE INDEX IF NOT EXISTS idx_invoices_invoice_number_trgm ON invoices USING gin (lower(invoice_number) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_invoices_vendor_trgm ON invoices USING gin (lower(vendor) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_invoices_description_trgm ON invoices USING gin (lower(description) gin_trgm_ops);
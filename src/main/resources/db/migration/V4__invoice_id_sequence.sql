@@ -0,0 +1,9 @@
+-- Invoice ids come from a pooled sequence (allocationSize = 50) instead of an IDENTITY column so
+-- that Hibernate can batch inserts. Hibernate treats each sequence value as the upper end of a
+-- block of 50 ids, so the sequence is restarted one full block above the highest existing id.
+ALTER TABLE invoices ALTER COLUMN id DROP IDENTITY IF EXISTS;
+
+CREATE SEQUENCE IF NOT EXISTS invoices_id_seq INCREMENT BY 50;
+ALTER SEQUENCE invoices_id_seq INCREMENT BY 50 OWNED BY invoices.id;
+
+SELECT setval('invoices_id_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM invoices));
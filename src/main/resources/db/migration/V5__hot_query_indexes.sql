@@ -0,0 +1,18 @@
+-- Composite indexes matching the access paths of InvoiceRepository and ProjectRepository.
+-- The trailing id column makes the keyset cursors (uploaded_at, id) / (created_at, id) a pure
+-- index range scan and also serves the ORDER BY of the offset-based listings.
+
+-- /api/invoices, /api/invoices/cursor, /api/invoices/search
+CREATE INDEX IF NOT EXISTS idx_invoices_user_uploaded_at ON invoices (user_id, uploaded_at DESC, id DESC);
+
+-- /api/projects/{id}/invoices, project deletes and totals recomputation
+CREATE INDEX IF NOT EXISTS idx_invoices_project_uploaded_at ON invoices (project_id, uploaded_at DESC, id DESC);
+
+-- Date range filters of search, export and bulk updates
+CREATE INDEX IF NOT EXISTS idx_invoices_user_invoice_date ON invoices (user_id, invoice_date);
+
+-- Vendor suggestions and vendor filters
+CREATE INDEX IF NOT EXISTS idx_invoices_user_vendor ON invoices (user_id, vendor);
+
+-- /api/projects, /api/projects/cursor
+CREATE INDEX IF NOT EXISTS idx_projects_user_created_at ON projects (user_id, created_at DESC, id DESC);
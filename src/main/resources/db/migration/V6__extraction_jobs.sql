@@ -0,0 +1,29 @@
+-- Durable queue for AI extractions. Jobs are claimed by the worker of any instance with
+-- FOR UPDATE SKIP LOCKED and leased for a limited time, so a job of a crashed instance is
+-- picked up again once its lease has expired.
+CREATE TABLE IF NOT EXISTS extraction_jobs (
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id         BIGINT       NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    project_id      BIGINT REFERENCES projects (id) ON DELETE SET NULL,
+    invoice_id      BIGINT REFERENCES invoices (id) ON DELETE SET NULL,
+    status          VARCHAR(16)  NOT NULL,
+    file_name       VARCHAR(255),
+    content_type    VARCHAR(255) NOT NULL,
+    file_data       BYTEA,
+    attempts        INTEGER      NOT NULL DEFAULT 0,
+    max_attempts    INTEGER      NOT NULL,
+    next_attempt_at TIMESTAMP(6) NOT NULL,
+    locked_by       VARCHAR(128),
+    locked_until    TIMESTAMP(6),
+    last_error      VARCHAR(1000),
+    created_at      TIMESTAMP(6) NOT NULL,
+    updated_at      TIMESTAMP(6) NOT NULL
+);
+
+-- Claim scan: pending jobs that are due and running jobs whose lease has expired
+CREATE INDEX IF NOT EXISTS idx_extraction_jobs_pending ON extraction_jobs (next_attempt_at)
+    WHERE status = 'PENDING';
+CREATE INDEX IF NOT EXISTS idx_extraction_jobs_running ON extraction_jobs (locked_until)
+    WHERE status = 'RUNNING';
+
+CREATE INDEX IF NOT EXISTS idx_extraction_jobs_user ON extraction_jobs (user_id);
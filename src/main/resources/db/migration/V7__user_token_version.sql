@@ -0,0 +1,2 @@
+-- Bumped on logout and password change; tokens carrying an older version are rejected
+ALTER TABLE users ADD COLUMN IF NOT EXISTS token_version INTEGER NOT NULL DEFAULT 0;
@@ -0,0 +1,26 @@
+-- Refresh tokens are stored as SHA-256 hashes. Every refresh replaces the token with a new one of
+-- the same family; presenting a token that was already used revokes the whole family.
+CREATE TABLE IF NOT EXISTS refresh_tokens (
+    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id       BIGINT       NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    family_id     VARCHAR(36)  NOT NULL,
+    token_hash    VARCHAR(64)  NOT NULL UNIQUE,
+    token_version INTEGER      NOT NULL,
+    expires_at    TIMESTAMP(6) NOT NULL,
+    created_at    TIMESTAMP(6) NOT NULL,
+    used_at       TIMESTAMP(6),
+    revoked_at    TIMESTAMP(6)
+);
+
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_family ON refresh_tokens (family_id);
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_user ON refresh_tokens (user_id);
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_expires_at ON refresh_tokens (expires_at);
+
+-- Access tokens revoked before they expire, by token id (jti). Rows are only needed until the
+-- token would have expired anyway; every instance keeps them in a Bloom filter.
+CREATE TABLE IF NOT EXISTS revoked_tokens (
+    token_id   VARCHAR(36)  PRIMARY KEY,
+    expires_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_revoked_tokens_expires_at ON revoked_tokens (expires_at);
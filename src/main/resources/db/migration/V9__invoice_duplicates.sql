@@ -0,0 +1,19 @@
+-- 64-bit difference hash of the uploaded image, compared by Hamming distance to catch a second
+-- photo of the same receipt; NULL for PDFs and files that could not be decoded
+ALTER TABLE invoices ADD COLUMN IF NOT EXISTS perceptual_hash BIGINT;
+
+-- Earlier invoice with the same vendor, invoice number and amount, set when the extraction
+-- finds one
+ALTER TABLE invoices ADD COLUMN IF NOT EXISTS duplicate_of_id BIGINT
+    REFERENCES invoices (id) ON DELETE SET NULL;
+
+-- Loading a user's hashes into the in-memory index
+CREATE INDEX IF NOT EXISTS idx_invoices_user_perceptual_hash ON invoices (user_id, id, perceptual_hash)
+    WHERE perceptual_hash IS NOT NULL;
+
+-- Duplicate check after extraction
+CREATE INDEX IF NOT EXISTS idx_invoices_user_duplicate_key ON invoices (user_id, lower(invoice_number), amount);
+
+-- ON DELETE SET NULL looks up the referencing rows
+CREATE INDEX IF NOT EXISTS idx_invoices_duplicate_of ON invoices (duplicate_of_id)
+    WHERE duplicate_of_id IS NOT NULL;
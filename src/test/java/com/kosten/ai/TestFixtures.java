@@ -0,0 +1,54 @@
+package com.kosten.ai;
+
+import com.kosten.ai.entity.Invoice;
+import com.kosten.ai.entity.Project;
+import com.kosten.ai.entity.User;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Builders for the entities the integration tests seed. They return unsaved entities, each test
+ * persists them the way it needs to.
+ */
+public final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    /**
+     * User with a unique username starting with the given prefix.
+     */
+    public static User user(String prefix) {
+        User user = new User();
+        user.setUsername(prefix + "-" + UUID.randomUUID());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("secret");
+        return user;
+    }
+
+    public static Project project(User user, String name) {
+        Project project = new Project();
+        project.setUser(user);
+        project.setName(name);
+        return project;
+    }
+
+    /**
+     * Invoice "INV-{number}" of "Vendor {number}" over 10.00, dated today. Higher numbers are
+     * uploaded later, so they come first in the listings.
+     */
+    public static Invoice invoice(User user, Project project, int number) {
+        Invoice invoice = new Invoice();
+        invoice.setUser(user);
+        invoice.setProject(project);
+        invoice.setInvoiceNumber("INV-" + number);
+        invoice.setVendor("Vendor " + number);
+        invoice.setAmount(BigDecimal.TEN);
+        invoice.setInvoiceDate(LocalDate.now());
+        invoice.setUploadedAt(LocalDateTime.now().plusSeconds(number));
+        return invoice;
+    }
+}
@@ -0,0 +1,140 @@
+package com.kosten.ai.controller;
+
+import com.kosten.ai.TestFixtures;
+import com.kosten.ai.entity.Invoice;
+import com.kosten.ai.entity.Project;
+import com.kosten.ai.entity.User;
+import com.kosten.ai.repository.InvoiceRepository;
+import com.kosten.ai.repository.ProjectRepository;
+import com.kosten.ai.repository.UserRepository;
+import com.kosten.ai.security.JwtUtil;
+import com.kosten.ai.security.TokenVersionCache;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Requests authenticated with a token resolve the user from its claims, so no endpoint loads the
+ * user row; ownership is part of the query that loads the resource.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+class EndpointStatementCountTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private TokenVersionCache tokenVersionCache;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private String token;
+    private Long projectId;
+    private Long invoiceId;
+    private Long foreignInvoiceId;
+
+    @BeforeEach
+    void setUp() {
+        User user = userRepository.save(TestFixtures.user("endpoint"));
+        User otherUser = userRepository.save(TestFixtures.user("endpoint"));
+
+        Project project = projectRepository.save(TestFixtures.project(user, "statements"));
+        projectId = project.getId();
+
+        invoiceId = createInvoice(user, project, 1);
+        createInvoice(user, project, 2);
+        createInvoice(user, project, 3);
+        foreignInvoiceId = createInvoice(otherUser, null, 4);
+        entityManager.flush();
+        entityManager.clear();
+
+        token = jwtUtil.generateToken(user);
+        // The token version check is cached across requests, warm it up outside the measurement
+        tokenVersionCache.currentVersion(user.getId());
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @Test
+    void invoiceListUsesPageAndCountQueryOnly() throws Exception {
+        // Page smaller than the result, so the count query runs
+        assertStatements("/api/invoices?page=0&size=2", status().isOk(), 2);
+    }
+
+    @Test
+    void invoiceByIdUsesOneQuery() throws Exception {
+        assertStatements("/api/invoices/" + invoiceId, status().isOk(), 1);
+    }
+
+    @Test
+    void foreignInvoiceIsNotFoundWithOneQuery() throws Exception {
+        assertStatements("/api/invoices/" + foreignInvoiceId, status().isNotFound(), 1);
+    }
+
+    @Test
+    void invoiceDownloadUsesOneQuery() throws Exception {
+        assertStatements("/api/invoices/" + invoiceId + "/download", status().isOk(), 1);
+    }
+
+    @Test
+    void projectInvoicesUseOwnershipCheckAndListQuery() throws Exception {
+        assertStatements("/api/invoices/project/" + projectId, status().isOk(), 2);
+    }
+
+    @Test
+    void projectByIdUsesOneQuery() throws Exception {
+        assertStatements("/api/projects/" + projectId, status().isOk(), 1);
+    }
+
+    private void assertStatements(String url, ResultMatcher expectedStatus, long expectedStatements) throws Exception {
+        entityManager.clear();
+        statistics.clear();
+
+        mockMvc.perform(get(url).header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(expectedStatus);
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(expectedStatements);
+        assertThat(statistics.getEntityStatistics(User.class.getName()).getLoadCount()).isZero();
+    }
+
+    private Long createInvoice(User user, Project project, int number) {
+        Invoice invoice = TestFixtures.invoice(user, project, number);
+        invoice.setImageData(new byte[] {1, 2, 3});
+        invoice.setContentType("image/png");
+        return invoiceRepository.save(invoice).getId();
+    }
+}
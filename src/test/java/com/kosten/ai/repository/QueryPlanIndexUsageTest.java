@@ -0,0 +1,214 @@
+package com.kosten.ai.repository;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Captures the SQL Hibernate generates for the main list and search repository methods and runs
+ * EXPLAIN on it with the same parameter values, against seeded and analyzed tables with the
+ * planner's default settings, to check that these queries are served from the indexes created by
+ * the migrations.
+ */
+@SpringBootTest
+@Transactional
+class QueryPlanIndexUsageTest {
+
+    private static final int USERS = 200;
+    private static final int PROJECTS_PER_USER = 10;
+    private static final int INVOICES_PER_USER = 100;
+
+    private static final SqlParameterValue NO_TEXT = new SqlParameterValue(Types.VARCHAR, null);
+    private static final SqlParameterValue NO_DATE = new SqlParameterValue(Types.DATE, null);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private CapturingStatementInspector statementInspector;
+
+    private Long userId;
+    private LocalDateTime cursorUploadedAt;
+    private Long cursorId;
+    private LocalDateTime cursorCreatedAt;
+    private Long cursorProjectId;
+
+    @BeforeEach
+    void seed() {
+        String prefix = "plan-" + UUID.randomUUID() + "-";
+        jdbcTemplate.update("INSERT INTO users (username, email, password, created_at) " +
+                "SELECT ? || g, ? || g || '@example.com', 'secret', now() FROM generate_series(1, ?) g",
+                prefix, prefix, USERS);
+        jdbcTemplate.update("INSERT INTO projects (user_id, name, created_at, invoice_count, total_cost) " +
+                "SELECT u.id, 'Project ' || g, now() - g * interval '1 hour', 0, 0 " +
+                "FROM users u CROSS JOIN generate_series(1, ?) g WHERE u.username LIKE ?",
+                PROJECTS_PER_USER, prefix + "%");
+        jdbcTemplate.update("INSERT INTO invoices (id, user_id, invoice_number, vendor, amount, invoice_date, " +
+                "description, uploaded_at) " +
+                "SELECT nextval('invoices_id_seq'), u.id, 'INV-' || g, 'Vendor ' || (g % 40), g % 500 + 0.99, " +
+                "current_date - g % 365, 'Item ' || g, now() - g * interval '1 minute' " +
+                "FROM users u CROSS JOIN generate_series(1, ?) g WHERE u.username LIKE ?",
+                INVOICES_PER_USER, prefix + "%");
+        jdbcTemplate.execute("ANALYZE users");
+        jdbcTemplate.execute("ANALYZE projects");
+        jdbcTemplate.execute("ANALYZE invoices");
+
+        userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE username = ?", Long.class, prefix + "1");
+        cursorUploadedAt = jdbcTemplate.queryForObject("SELECT uploaded_at FROM invoices WHERE user_id = ? " +
+                "ORDER BY uploaded_at DESC, id DESC OFFSET 20 LIMIT 1", LocalDateTime.class, userId);
+        cursorId = jdbcTemplate.queryForObject("SELECT id FROM invoices WHERE user_id = ? AND uploaded_at = ? " +
+                "ORDER BY id DESC LIMIT 1", Long.class, userId, cursorUploadedAt);
+        cursorCreatedAt = jdbcTemplate.queryForObject("SELECT created_at FROM projects WHERE user_id = ? " +
+                "ORDER BY created_at DESC, id DESC OFFSET 5 LIMIT 1", LocalDateTime.class, userId);
+        cursorProjectId = jdbcTemplate.queryForObject("SELECT id FROM projects WHERE user_id = ? AND created_at = ? " +
+                "ORDER BY id DESC LIMIT 1", Long.class, userId, cursorCreatedAt);
+    }
+
+    @Test
+    void invoiceListUsesUserUploadedAtIndex() {
+        String sql = statementInspector.capture(() ->
+                invoiceRepository.findResponsesByUserId(userId, PageRequest.of(0, 20)));
+
+        assertThat(explain(sql, userId, 20)).contains("idx_invoices_user_uploaded_at");
+    }
+
+    @Test
+    void invoiceCursorUsesUserUploadedAtIndex() {
+        String sql = statementInspector.capture(() ->
+                invoiceRepository.findResponsesByUserIdAfter(userId, cursorUploadedAt, cursorId, PageRequest.of(0, 21)));
+
+        assertThat(explain(sql, userId, cursorUploadedAt, cursorUploadedAt, cursorId, 21))
+                .contains("idx_invoices_user_uploaded_at");
+    }
+
+    @Test
+    void vendorSearchUsesAnIndex() {
+        String sql = statementInspector.capture(() ->
+                invoiceRepository.searchInvoices(userId, null, "vendor 1", null, null, PageRequest.of(0, 20)));
+
+        assertThat(explain(sql, userId, NO_TEXT, NO_TEXT, "vendor 1", "vendor 1", NO_DATE, NO_DATE,
+                NO_DATE, NO_DATE, 20))
+                .contains("idx_invoices_")
+                .doesNotContain("Seq Scan on invoices");
+    }
+
+    @Test
+    void dateRangeSearchAfterCursorUsesAnIndex() {
+        LocalDate startDate = LocalDate.now().minusMonths(3);
+        LocalDate endDate = LocalDate.now();
+        String sql = statementInspector.capture(() ->
+                invoiceRepository.searchInvoicesAfter(userId, null, null, startDate, endDate,
+                        cursorUploadedAt, cursorId, PageRequest.of(0, 21)));
+
+        assertThat(explain(sql, userId, NO_TEXT, NO_TEXT, NO_TEXT, NO_TEXT, startDate, startDate, endDate, endDate,
+                cursorUploadedAt, cursorUploadedAt, cursorUploadedAt, cursorId, 21))
+                .contains("idx_invoices_")
+                .doesNotContain("Seq Scan on invoices");
+    }
+
+    @Test
+    void fullTextSearchUsesAnIndex() {
+        String query = "vendor";
+        String sql = statementInspector.capture(() ->
+                invoiceRepository.searchFullText(userId, query, PageRequest.of(0, 20)));
+
+        assertThat(explain(sql, query, query, query, query, userId, query, query, query, query, 20))
+                .contains("idx_invoices_")
+                .doesNotContain("Seq Scan on invoices");
+    }
+
+    @Test
+    void projectListUsesUserCreatedAtIndex() {
+        String sql = statementInspector.capture(() ->
+                projectRepository.findByUserIdOrderByCreatedAtDescIdDesc(userId, PageRequest.of(0, 20)));
+
+        assertThat(explain(sql, userId, 20)).contains("idx_projects_user_created_at");
+    }
+
+    @Test
+    void projectCursorUsesUserCreatedAtIndex() {
+        String sql = statementInspector.capture(() ->
+                projectRepository.findByUserIdAfter(userId, cursorCreatedAt, cursorProjectId, PageRequest.of(0, 21)));
+
+        assertThat(explain(sql, userId, cursorCreatedAt, cursorCreatedAt, cursorProjectId, 21))
+                .contains("idx_projects_user_created_at");
+    }
+
+    // Parameters in the order of the placeholders in the generated SQL
+    private String explain(String sql, Object... parameters) {
+        assertThat(sql.chars().filter(c -> c == '?').count())
+                .as("placeholders in %s", sql)
+                .isEqualTo(parameters.length);
+        List<String> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, parameters);
+        return String.join("\n", plan);
+    }
+
+    /**
+     * Records the SQL of the first statement a repository call sends, i.e. the content query of a
+     * page rather than its count query.
+     */
+    static class CapturingStatementInspector implements StatementInspector {
+
+        private final ThreadLocal<List<String>> statements = new ThreadLocal<>();
+
+        @Override
+        public String inspect(String sql) {
+            List<String> captured = statements.get();
+            if (captured != null) {
+                captured.add(sql);
+            }
+            return sql;
+        }
+
+        String capture(Runnable call) {
+            List<String> captured = new ArrayList<>();
+            statements.set(captured);
+            try {
+                call.run();
+            } finally {
+                statements.remove();
+            }
+            assertThat(captured).isNotEmpty();
+            return captured.get(0);
+        }
+    }
+
+    @TestConfiguration
+    static class StatementInspectorConfig {
+
+        @Bean
+        CapturingStatementInspector capturingStatementInspector() {
+            return new CapturingStatementInspector();
+        }
+
+        @Bean
+        HibernatePropertiesCustomizer statementInspectorCustomizer(CapturingStatementInspector inspector) {
+            return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, inspector);
+        }
+    }
+}
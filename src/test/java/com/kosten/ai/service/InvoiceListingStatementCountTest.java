@@ -0,0 +1,128 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.TestFixtures;
+import com.kosten.ai.entity.Project;
+import com.kosten.ai.entity.User;
+import com.kosten.ai.repository.InvoiceRepository;
+import com.kosten.ai.repository.ProjectRepository;
+import com.kosten.ai.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Every listing must load its rows with a fixed number of statements, independent of page size,
+ * i.e. no per-row lazy load of the project.
+ */
+@SpringBootTest
+@Transactional
+class InvoiceListingStatementCountTest {
+
+    private static final int DISTINCT_PROJECT_INVOICES = 25;
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Long smallProjectId;
+    private Long largeProjectId;
+
+    @BeforeEach
+    void setUp() {
+        User user = userRepository.save(TestFixtures.user("stmt"));
+
+        Project smallProject = createProject(user, "small");
+        Project largeProject = createProject(user, "large");
+        smallProjectId = smallProject.getId();
+        largeProjectId = largeProject.getId();
+
+        createInvoice(user, smallProject, 0);
+        for (int i = 1; i <= 10; i++) {
+            createInvoice(user, largeProject, i);
+        }
+        // The newest invoices each get their own project, so a per-row project load would show up
+        for (int i = 0; i < DISTINCT_PROJECT_INVOICES; i++) {
+            createInvoice(user, createProject(user, "project-" + i), 100 + i);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user.getUsername(), null, List.of()));
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void userInvoicesUseConstantStatementCount() {
+        long small = statementsFor(() -> invoiceService.getUserInvoices(0, 5));
+        long large = statementsFor(() -> invoiceService.getUserInvoices(0, 20));
+
+        assertThat(large).isEqualTo(small);
+    }
+
+    @Test
+    void searchUsesConstantStatementCount() {
+        long small = statementsFor(() -> invoiceService.searchInvoices(null, "vendor", null, null, 0, 5));
+        long large = statementsFor(() -> invoiceService.searchInvoices(null, "vendor", null, null, 0, 20));
+
+        assertThat(large).isEqualTo(small);
+    }
+
+    @Test
+    void projectInvoicesUseConstantStatementCount() {
+        long small = statementsFor(() -> invoiceService.getProjectInvoices(smallProjectId));
+        long large = statementsFor(() -> invoiceService.getProjectInvoices(largeProjectId));
+
+        assertThat(large).isEqualTo(small);
+    }
+
+    private Project createProject(User user, String name) {
+        return projectRepository.save(TestFixtures.project(user, name));
+    }
+
+    private void createInvoice(User user, Project project, int number) {
+        invoiceRepository.save(TestFixtures.invoice(user, project, number));
+    }
+
+    private long statementsFor(Runnable listing) {
+        entityManager.clear();
+        statistics.clear();
+        listing.run();
+        return statistics.getPrepareStatementCount();
+    }
+}
@@ -0,0 +1,147 @@
+package com.kosten.ai.service;
+
+import com.kosten.ai.TestFixtures;
+import com.kosten.ai.dto.SpendAnalyticsResponse;
+import com.kosten.ai.dto.SpendBucket;
+import com.kosten.ai.entity.Invoice;
+import com.kosten.ai.entity.Project;
+import com.kosten.ai.entity.User;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the columnar aggregation against the equivalent SQL GROUP BY and logs the timings of
+ * both for comparison.
+ */
+@Slf4j
+@SpringBootTest
+@Transactional
+class SpendAnalyticsBenchmarkTest {
+
+    private static final int INVOICES = 5_000;
+    private static final int ITERATIONS = 20;
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @Autowired
+    private SpendAnalyticsService spendAnalyticsService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = TestFixtures.user("analytics");
+        entityManager.persist(user);
+
+        Project[] projects = new Project[5];
+        for (int p = 0; p < projects.length; p++) {
+            projects[p] = TestFixtures.project(user, "Project " + p);
+            entityManager.persist(projects[p]);
+        }
+
+        for (int i = 0; i < INVOICES; i++) {
+            Invoice invoice = TestFixtures.invoice(user, i % 7 == 0 ? null : projects[i % projects.length], i);
+            invoice.setVendor("Vendor " + (i % 40));
+            invoice.setAmount(BigDecimal.valueOf(1_000 + i * 37L % 50_000, 2));
+            invoice.setInvoiceDate(START.plusDays(i % 730));
+            entityManager.persist(invoice);
+            if (i % 500 == 0) {
+                entityManager.flush();
+                entityManager.clear();
+                user = entityManager.merge(user);
+                for (int p = 0; p < projects.length; p++) {
+                    projects[p] = entityManager.merge(projects[p]);
+                }
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user.getUsername(), null, List.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void vendorTotalsMatchSqlGroupBy() {
+        LocalDate from = START.plusMonths(3);
+        LocalDate to = START.plusMonths(15);
+
+        Map<String, BigDecimal> sql = timed("SQL GROUP BY vendor", () -> toMap(entityManager.createQuery(
+                        "SELECT i.vendor, SUM(i.amount) FROM Invoice i WHERE i.user.id = :userId " +
+                        "AND i.invoiceDate BETWEEN :from AND :to GROUP BY i.vendor", Object[].class)
+                .setParameter("userId", user.getId())
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList()));
+
+        Map<String, BigDecimal> columnar = timed("columnar vendor", () -> toMap(spendAnalyticsService
+                .getSpend(SpendAnalyticsService.GroupBy.VENDOR, from, to, null)));
+
+        assertThat(columnar).isEqualTo(sql);
+    }
+
+    @Test
+    void projectTotalsMatchSqlGroupBy() {
+        Map<String, BigDecimal> sql = timed("SQL GROUP BY project", () -> toMap(entityManager.createQuery(
+                        "SELECT COALESCE(CAST(p.id AS String), 'none'), SUM(i.amount) FROM Invoice i " +
+                        "LEFT JOIN i.project p WHERE i.user.id = :userId GROUP BY p.id", Object[].class)
+                .setParameter("userId", user.getId())
+                .getResultList()));
+
+        Map<String, BigDecimal> columnar = timed("columnar project", () -> toMap(spendAnalyticsService
+                .getSpend(SpendAnalyticsService.GroupBy.PROJECT, null, null, null)));
+
+        assertThat(columnar).isEqualTo(sql);
+    }
+
+    private <T> T timed(String label, Supplier<T> query) {
+        T result = query.get(); // warm-up, also builds the snapshot
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            result = query.get();
+        }
+        long micros = (System.nanoTime() - start) / 1_000 / ITERATIONS;
+        log.info("{}: {} us/op ({} invoices)", label, micros, INVOICES);
+        return result;
+    }
+
+    private Map<String, BigDecimal> toMap(List<Object[]> rows) {
+        Map<String, BigDecimal> totals = new HashMap<>();
+        for (Object[] row : rows) {
+            totals.put(String.valueOf(row[0]), ((BigDecimal) row[1]).setScale(2));
+        }
+        return totals;
+    }
+
+    private Map<String, BigDecimal> toMap(SpendAnalyticsResponse response) {
+        Map<String, BigDecimal> totals = new HashMap<>();
+        for (SpendBucket bucket : response.getBuckets()) {
+            totals.put(bucket.getKey(), bucket.getTotal());
+        }
+        return totals;
+    }
+}